@@ -0,0 +1,33 @@
+package cache;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Repo files of dogs, set up by the benchmarks
+ */
+final class BenchmarkRepos {
+    private BenchmarkRepos() {
+    }
+
+    static Dog dog(int id) {
+        return new Dog(id, "dog" + id, id % 100, id % 50, "race");
+    }
+
+    /**
+     * @return a new repo file holding dogs of ids [0, size), to delete once done with (or deleted on exit)
+     */
+    static Path repoOf(int size) throws IOException {
+        Path db = Files.createTempFile("db-bench", "");
+        db.toFile().deleteOnExit();
+        DogConverter converter = new DogConverter();
+        try (PrintWriter pw = new PrintWriter(db.toFile())) {
+            for (int id = 0; id < size; id++) {
+                pw.println(converter.getJson(dog(id)));
+            }
+        }
+        return db;
+    }
+}
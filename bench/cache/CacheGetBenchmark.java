@@ -0,0 +1,64 @@
+package cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cache.get hits and misses in LAZY and EAGER modes. a LAZY cache is filled before measured, so its hits never
+ * reach the repo while its misses always do. run with -t to read by several threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CacheGetBenchmark {
+    private static final int SIZE = 10000;
+
+    @Param({"LAZY", "EAGER"})
+    public String mode;
+
+    private Path db;
+    private DemoRepo repo;
+    private Cache<Dog> cache;
+
+    @Setup
+    public void setUp() throws IOException, RepoAccessException {
+        db = BenchmarkRepos.repoOf(SIZE);
+        repo = new DemoRepo(db.toString());
+        cache = new Cache<>(repo, Cache.Mode.valueOf(mode), new DogConverter());
+        for (int id = 0; id < SIZE; id++) cache.get(id);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, RepoAccessException {
+        cache.close();
+        repo.close();
+        Files.delete(db);
+    }
+
+    @Benchmark
+    public void hit(Blackhole blackhole) {
+        blackhole.consume(cache.get(ThreadLocalRandom.current().nextInt(SIZE)));
+    }
+
+    @Benchmark
+    public void miss(Blackhole blackhole) {
+        blackhole.consume(cache.get(SIZE + ThreadLocalRandom.current().nextInt(SIZE)));
+    }
+}
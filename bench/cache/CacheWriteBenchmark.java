@@ -0,0 +1,77 @@
+package cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache.add, update and remove in LAZY and EAGER modes. every iteration is a batch of OPS writes per thread on a
+ * new cache of a new repo file, as a write rewrites the file and the writes of an iteration change it. the
+ * threads write distinct ids, run with -t to write by several threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = CacheWriteBenchmark.OPS)
+@Measurement(iterations = 5, batchSize = CacheWriteBenchmark.OPS)
+@Fork(1)
+public class CacheWriteBenchmark {
+    static final int OPS = 50;
+    private static final int SIZE = 1000;
+
+    @Param({"LAZY", "EAGER"})
+    public String mode;
+
+    private Path db;
+    private DemoRepo repo;
+    private Cache<Dog> cache;
+    // the ids written so far in the iteration, by all the threads
+    private final AtomicInteger written = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException, RepoAccessException {
+        db = BenchmarkRepos.repoOf(SIZE);
+        repo = new DemoRepo(db.toString());
+        cache = new Cache<>(repo, Cache.Mode.valueOf(mode), new DogConverter());
+        written.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException, RepoAccessException {
+        cache.close();
+        repo.close();
+        Files.delete(db);
+    }
+
+    @Benchmark
+    public void add(Blackhole blackhole) throws RepoAccessException {
+        blackhole.consume(cache.add(BenchmarkRepos.dog(SIZE + written.getAndIncrement())));
+    }
+
+    @Benchmark
+    public void update(Blackhole blackhole) throws RepoAccessException {
+        blackhole.consume(cache.update(new Dog(written.getAndIncrement() % SIZE, "updated", 1, 2, "race")));
+    }
+
+    @Benchmark
+    public void remove(Blackhole blackhole) throws RepoAccessException {
+        blackhole.consume(cache.remove(BenchmarkRepos.dog(written.getAndIncrement() % SIZE)));
+    }
+}
@@ -0,0 +1,94 @@
+package cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DemoRepo operations at several file sizes, by a single thread, every iteration on a new repo file.
+ * the writes rewrite the file, so an iteration of them is a batch of OPS writes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DemoRepoBenchmark {
+    static final int OPS = 100;
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private final DogConverter converter = new DogConverter();
+    private Path db;
+    private DemoRepo repo;
+    // the ids written so far in the iteration
+    private int written;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        db = BenchmarkRepos.repoOf(size);
+        repo = new DemoRepo(db.toString());
+        written = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        repo.close();
+        Files.delete(db);
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        blackhole.consume(repo.get(ThreadLocalRandom.current().nextInt(size)));
+    }
+
+    @Benchmark
+    public void getAll(Blackhole blackhole) {
+        blackhole.consume(repo.getAll());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(batchSize = OPS)
+    @Measurement(batchSize = OPS)
+    public void add(Blackhole blackhole) {
+        blackhole.consume(repo.add(converter.getJson(BenchmarkRepos.dog(size + written++))));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(batchSize = OPS)
+    @Measurement(batchSize = OPS)
+    public void update(Blackhole blackhole) {
+        blackhole.consume(repo.update(converter.getJson(new Dog(written++ % size, "updated", 1, 2, "race"))));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(batchSize = OPS)
+    @Measurement(batchSize = OPS)
+    public void remove(Blackhole blackhole) {
+        blackhole.consume(repo.remove(converter.getJson(BenchmarkRepos.dog(written++ % size))));
+    }
+}
@@ -0,0 +1,33 @@
+package cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * DogConverter round trips: to JSON text and back, as a repo line is written and read.
+ * run with -t to convert by several threads
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DogConverterBenchmark {
+    private final DogConverter converter = new DogConverter();
+    private int next;
+
+    @Benchmark
+    public void roundTrip(Blackhole blackhole) throws JSONException {
+        JSONObject jsonObject = new JSONObject(converter.getJson(BenchmarkRepos.dog(next++)).toString());
+        blackhole.consume(converter.getEntity(jsonObject));
+    }
+}
@@ -0,0 +1,67 @@
+package cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EAGER warm-up, loading a whole repo into a new cache. the repo is opened before and closed after every load,
+ * which is measured alone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WarmUpBenchmark {
+    @Param({"10000", "100000"})
+    public int size;
+
+    private Path db;
+    private DemoRepo repo;
+    private Cache<Dog> cache;
+
+    @Setup
+    public void createRepo() throws IOException {
+        db = BenchmarkRepos.repoOf(size);
+    }
+
+    @TearDown
+    public void deleteRepo() throws IOException {
+        Files.delete(db);
+    }
+
+    @Setup(Level.Invocation)
+    public void openRepo() {
+        repo = new DemoRepo(db.toString());
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeRepo() throws IOException, RepoAccessException {
+        cache.close();
+        repo.close();
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) throws RepoAccessException {
+        cache = new Cache<>(repo, Cache.Mode.EAGER, new DogConverter());
+        blackhole.consume(cache.size());
+    }
+}
@@ -0,0 +1,112 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous facade of a cache. Operations that may access the repo run on an executor, virtual threads by
+ * default where available, so callers don't block on a slow repo. A get of a cached entity completes right away.
+ * A RepoAccessException completes the future exceptionally, wrapped in a CompletionException
+ *
+ * @param <T> An object that implements Entity
+ */
+public class AsyncCache<T extends Entity> {
+    private final Cache<T> cache;
+    private final Executor executor;
+
+    /**
+     * @param cache the cache to access
+     */
+    AsyncCache(Cache<T> cache) {
+        this(cache, VirtualThreads.executor());
+    }
+
+    /**
+     * @param cache    the cache to access
+     * @param executor executor of the operations that may block on repo
+     */
+    AsyncCache(Cache<T> cache, Executor executor) {
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the cache accessed
+     */
+    Cache<T> getCache() {
+        return cache;
+    }
+
+    /**
+     * get a cached entity
+     *
+     * @param eId the id of the entity
+     * @return a future of the entity required. of null if not exists
+     */
+    CompletableFuture<T> getAsync(Integer eId) {
+        T entity = cache.getIfHit(eId); // a miss is recorded by get
+        if (entity != null) return CompletableFuture.completedFuture(entity);
+        return CompletableFuture.supplyAsync(() -> cache.get(eId), executor);
+    }
+
+    /**
+     * get several cached entities
+     *
+     * @param eIds the ids of the entities
+     * @return a future of the entities that exist, in the order of the ids given
+     */
+    CompletableFuture<ArrayList<T>> getAllAsync(Collection<Integer> eIds) {
+        return CompletableFuture.supplyAsync(() -> cache.getAll(eIds), executor);
+    }
+
+    /**
+     * add an entity to cache
+     *
+     * @param entity an entity to add
+     * @return a future of true if added successfully, false if already exists
+     */
+    CompletableFuture<Boolean> addAsync(T entity) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.add(entity);
+            } catch (RepoAccessException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * update an entity in cache
+     *
+     * @param entity an entity to update
+     * @return a future of true if updated successfully, false if not exists
+     */
+    CompletableFuture<Boolean> updateAsync(T entity) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.update(entity);
+            } catch (RepoAccessException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * remove an entity from cache
+     *
+     * @param entity an entity to remove
+     * @return a future of true if removed successfully, false if not exists
+     */
+    CompletableFuture<Boolean> removeAsync(T entity) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.remove(entity);
+            } catch (RepoAccessException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
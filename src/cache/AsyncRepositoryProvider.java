@@ -0,0 +1,137 @@
+package cache;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Represents a repository provider for a cache whose operations complete asynchronously.
+ * The futures complete with the same values the methods of RepositoryProvider return, a future that completed
+ * exceptionally counts as a failure to provide
+ */
+public interface AsyncRepositoryProvider {
+    /**
+     * get a repo entry
+     *
+     * @param id number of entry
+     * @return a future of a JSON object represents the entry. of null if not exists or repo failed to provide
+     */
+    CompletableFuture<JSONObject> get(Integer id);
+
+    /**
+     * get all entries in repo
+     *
+     * @return a future of a List of all entries in the repo, of null if failed to provide
+     */
+    CompletableFuture<ArrayList<JSONObject>> getAll();
+
+    /**
+     * add an entry to repo
+     *
+     * @param jsonObject JSON object to add
+     * @return a future of the state of the operation, see RepositoryProvider.add
+     */
+    CompletableFuture<RepositoryProvider.ReturnSate> add(JSONObject jsonObject);
+
+    /**
+     * update an entry
+     *
+     * @param jsonObject JSON object to update
+     * @return a future of the state of the operation, see RepositoryProvider.update
+     */
+    CompletableFuture<RepositoryProvider.ReturnSate> update(JSONObject jsonObject);
+
+    /**
+     * remove an entry
+     *
+     * @param jsonObject JSON object to remove
+     * @return a future of the state of the operation, see RepositoryProvider.remove
+     */
+    CompletableFuture<RepositoryProvider.ReturnSate> remove(JSONObject jsonObject);
+
+    /**
+     * @return a blocking view of this repo, to attach it to a cache. a call waits for its future
+     */
+    default RepositoryProvider toBlocking() {
+        AsyncRepositoryProvider async = this;
+        return new RepositoryProvider() {
+            @Override
+            public JSONObject get(Integer id) {
+                return async.get(id).exceptionally(e -> null).join();
+            }
+
+            @Override
+            public ArrayList<JSONObject> getAll() {
+                return async.getAll().exceptionally(e -> null).join();
+            }
+
+            @Override
+            public ReturnSate add(JSONObject jsonObject) {
+                return async.add(jsonObject).exceptionally(e -> ReturnSate.FAILURE).join();
+            }
+
+            @Override
+            public ReturnSate update(JSONObject jsonObject) {
+                return async.update(jsonObject).exceptionally(e -> ReturnSate.FAILURE).join();
+            }
+
+            @Override
+            public ReturnSate remove(JSONObject jsonObject) {
+                return async.remove(jsonObject).exceptionally(e -> ReturnSate.FAILURE).join();
+            }
+        };
+    }
+
+    /**
+     * run a blocking repo asynchronously, on virtual threads where available
+     *
+     * @param repo a blocking repo
+     * @return an asynchronous view of the repo
+     */
+    static AsyncRepositoryProvider of(RepositoryProvider repo) {
+        return of(repo, VirtualThreads.executor());
+    }
+
+    /**
+     * run a blocking repo asynchronously
+     *
+     * @param repo     a blocking repo
+     * @param executor executor of the blocking calls
+     * @return an asynchronous view of the repo
+     */
+    static AsyncRepositoryProvider of(RepositoryProvider repo, Executor executor) {
+        return new AsyncRepositoryProvider() {
+            @Override
+            public CompletableFuture<JSONObject> get(Integer id) {
+                return CompletableFuture.supplyAsync(() -> repo.get(id), executor);
+            }
+
+            @Override
+            public CompletableFuture<ArrayList<JSONObject>> getAll() {
+                return CompletableFuture.supplyAsync(repo::getAll, executor);
+            }
+
+            @Override
+            public CompletableFuture<RepositoryProvider.ReturnSate> add(JSONObject jsonObject) {
+                return CompletableFuture.supplyAsync(() -> repo.add(jsonObject), executor);
+            }
+
+            @Override
+            public CompletableFuture<RepositoryProvider.ReturnSate> update(JSONObject jsonObject) {
+                return CompletableFuture.supplyAsync(() -> repo.update(jsonObject), executor);
+            }
+
+            @Override
+            public CompletableFuture<RepositoryProvider.ReturnSate> remove(JSONObject jsonObject) {
+                return CompletableFuture.supplyAsync(() -> repo.remove(jsonObject), executor);
+            }
+
+            @Override
+            public RepositoryProvider toBlocking() {
+                return repo; // no need to go through the executor
+            }
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entity-binary converter for cache, the binary alternative of Converter
+ */
+public interface BinaryConverter<T extends Entity> {
+    /**
+     * convert a binary record to entity
+     *
+     * @param buffer a buffer positioned at the record to convert, advanced past it
+     * @return an entity represents the record given, null if conversion failed
+     */
+    T getEntity(ByteBuffer buffer);
+
+    /**
+     * convert entity to a binary record
+     *
+     * @param entity an entity to convert
+     * @return a record represents the entity given, null if conversion failed
+     */
+    byte[] getBytes(T entity);
+}
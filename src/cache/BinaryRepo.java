@@ -0,0 +1,308 @@
+package cache;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Repository that stores entities as binary records, converted by a binary converter instead of JSON.
+ * The file is a log of length prefixed records: [length][kind][id][record], where length counts the bytes
+ * after it and kind tells an entity from a tombstone. An update appends the new version of the entity and a remove
+ * appends a tombstone. Once superseded versions and tombstones are half of the file a background compaction
+ * rewrites it with the live entities only.
+ *
+ * @param <T> An object that implements Entity
+ */
+public class BinaryRepo<T extends Entity> implements EntityRepository<T> {
+    private static final byte ENTITY = 1;
+    private static final byte TOMBSTONE = 0;
+    private static final int HEADER = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+    // files smaller than this are not worth compacting
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final BinaryConverter<T> converter;
+    private FileChannel channel;
+    // readers access the file concurrently, writers append exclusively
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    // location of the latest version of every live entity
+    private Map<Integer, LogLocation> index = new HashMap<>();
+    private long size;
+    private long garbage;
+    private final LogCompactor compactor;
+
+    /**
+     * @param filepath  file of the repo, created if not exists
+     * @param converter converter of the entities to binary records
+     */
+    BinaryRepo(String filepath, BinaryConverter<T> converter) {
+        this.path = Path.of(filepath);
+        this.converter = converter;
+        this.compactor = new LogCompactor("BinaryRepo", path, fileLock, new LogCompactor.Log() {
+            @Override
+            public FileChannel channel() {
+                return channel;
+            }
+
+            @Override
+            public Map<Integer, LogLocation> index() {
+                return index;
+            }
+
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public long replay(FileChannel file, long position, Map<Integer, LogLocation> index) throws IOException {
+                return BinaryRepo.replay(file, position, index);
+            }
+
+            @Override
+            public void reopen(Map<Integer, LogLocation> index, long size, long garbage) throws IOException {
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                BinaryRepo.this.index = index;
+                BinaryRepo.this.size = size;
+                BinaryRepo.this.garbage = garbage;
+            }
+        });
+        try {
+            open();
+        } catch (IOException e) {
+            System.err.println("Error loading BinaryRepo");
+        }
+    }
+
+    @Override
+    public T get(int id) {
+        try {
+            return find(id);
+        } catch (RepoAccessException e) {
+            return null; // failed to provide
+        }
+    }
+
+    @Override
+    public T find(int id) throws RepoAccessException {
+        fileLock.readLock().lock();
+        try {
+            LogLocation location = index.get(id);
+            if (location == null) return null;
+            ByteBuffer buffer = ByteBuffer.allocate(location.length - HEADER);
+            LogCompactor.readFully(channel, buffer, location.offset + HEADER);
+            return converter.getEntity(buffer.flip());
+        } catch (IOException e) {
+            throw new RepoAccessException();
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ArrayList<T> getAll() {
+        fileLock.readLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            ArrayList<T> entities = new ArrayList<>(index.size());
+            long position = 0;
+            while (position < size) {
+                int length = in.readInt();
+                byte kind = in.readByte();
+                int id = in.readInt();
+                byte[] record = new byte[length - Byte.BYTES - Integer.BYTES];
+                in.readFully(record);
+                LogLocation location = index.get(id);
+                // only the latest version of a live entity is returned
+                if (kind == ENTITY && location != null && location.offset == position) {
+                    T entity = converter.getEntity(ByteBuffer.wrap(record));
+                    if (entity == null) return null;
+                    entities.add(entity);
+                }
+                position += Integer.BYTES + length;
+            }
+            return entities;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * the records of the live entities are read and converted lazily, in file order so the file is read forward.
+     * writers are blocked until the stream is closed, which must be done by the thread that opened it
+     */
+    @Override
+    public Stream<T> stream() {
+        fileLock.readLock().lock();
+        List<LogLocation> locations = new ArrayList<>(index.values());
+        locations.sort(Comparator.comparingLong(location -> location.offset));
+        return locations.stream().onClose(fileLock.readLock()::unlock).map(location -> {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length - HEADER);
+            T entity;
+            try {
+                LogCompactor.readFully(channel, buffer, location.offset + HEADER);
+                entity = converter.getEntity(buffer.flip());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (entity == null) throw new UncheckedIOException(new IOException("Invalid record at " + location.offset));
+            return entity;
+        });
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate add(T entity) {
+        fileLock.writeLock().lock();
+        try {
+            if (index.containsKey(entity.getId())) return RepositoryProvider.ReturnSate.ALREADY_EXISTS;
+            byte[] record = converter.getBytes(entity);
+            if (record == null) return RepositoryProvider.ReturnSate.FAILURE;
+            index.put(entity.getId(), append(ENTITY, entity.getId(), record));
+        } catch (IOException e) {
+            return RepositoryProvider.ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return RepositoryProvider.ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate update(T entity) {
+        fileLock.writeLock().lock();
+        try {
+            LogLocation old = index.get(entity.getId());
+            if (old == null) return RepositoryProvider.ReturnSate.NOT_EXISTS;
+            byte[] record = converter.getBytes(entity);
+            if (record == null) return RepositoryProvider.ReturnSate.FAILURE;
+            index.put(entity.getId(), append(ENTITY, entity.getId(), record));
+            garbage += old.length;
+        } catch (IOException e) {
+            return RepositoryProvider.ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        compactIfNeeded();
+        return RepositoryProvider.ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate remove(T entity) {
+        fileLock.writeLock().lock();
+        try {
+            LogLocation old = index.get(entity.getId());
+            if (old == null) return RepositoryProvider.ReturnSate.NOT_EXISTS;
+            garbage += old.length + append(TOMBSTONE, entity.getId(), new byte[0]).length;
+            index.remove(entity.getId());
+        } catch (IOException e) {
+            return RepositoryProvider.ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        compactIfNeeded();
+        return RepositoryProvider.ReturnSate.SUCCESS;
+    }
+
+    /**
+     * rewrite the file with the live entities only, see LogCompactor
+     *
+     * @throws IOException if rewriting the file failed
+     */
+    void compact() throws IOException {
+        try {
+            compactor.compact();
+        } catch (JSONException e) {
+            throw new IOException(e); // not thrown, the records are not JSON
+        }
+    }
+
+    /**
+     * schedule a background compaction if the garbage passed half of the file and none is running
+     */
+    private void compactIfNeeded() {
+        fileLock.readLock().lock();
+        try {
+            if (size < MIN_COMPACTION_SIZE || garbage * 2 < size) return;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        compactor.schedule();
+    }
+
+    /**
+     * open the file and build the index by replaying its records
+     *
+     * @throws IOException if reading the file failed
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        size = replay(channel, 0, index);
+        channel.truncate(size); // drop a record partly written before a crash
+        garbage = size - LogCompactor.liveSize(index);
+    }
+
+    /**
+     * apply the records of a file from a position on to an index
+     *
+     * @return the end of the last complete record
+     * @throws IOException if reading the file failed
+     */
+    private static long replay(FileChannel file, long position, Map<Integer, LogLocation> index) throws IOException {
+        file.position(position);
+        // not closed, closing the stream would close the file
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file), 1 << 16));
+        try {
+            while (true) {
+                int length = in.readInt();
+                byte kind = in.readByte();
+                int id = in.readInt();
+                in.skipNBytes(length - Byte.BYTES - Integer.BYTES);
+                if (kind == ENTITY) index.put(id, new LogLocation(position, Integer.BYTES + length));
+                else index.remove(id);
+                position += Integer.BYTES + length;
+            }
+        } catch (EOFException ignored) {
+            // end of file, a record partly written is not applied
+        }
+        return position;
+    }
+
+    /**
+     * append a record to the end of the file, must be called holding the write lock
+     *
+     * @return the location of the record appended
+     * @throws IOException if writing the file failed
+     */
+    private LogLocation append(byte kind, int id, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + record.length);
+        buffer.putInt(Byte.BYTES + Integer.BYTES + record.length).put(kind).putInt(id).put(record).flip();
+        long position = size;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        LogLocation location = new LogLocation(size, buffer.capacity());
+        size = position;
+        return location;
+    }
+}
@@ -0,0 +1,123 @@
+package cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe counting Bloom filter over entity ids.
+ * Answers "definitely not present" or "might be present", and unlike a plain Bloom filter supports removal.
+ * Every slot is a 4 bit counter (16 per long), a counter that saturates is never decremented again so
+ * removals can't cause false negatives.
+ */
+class BloomFilter {
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray counters;
+    private final int slots;
+    private final int hashes;
+    private final LongAdder entries = new LongAdder();
+
+    /**
+     * @param expectedEntries   number of ids the filter is sized for
+     * @param falsePositiveRate desired false positive rate when holding expectedEntries ids
+     */
+    BloomFilter(int expectedEntries, double falsePositiveRate) {
+        if (expectedEntries <= 0) throw new IllegalArgumentException("expectedEntries must be positive");
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1)");
+        long bits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.slots = (int) Math.min(Integer.MAX_VALUE - COUNTERS_PER_WORD, Math.max(COUNTERS_PER_WORD, bits));
+        this.hashes = Math.max(1, (int) Math.round((double) slots / expectedEntries * Math.log(2)));
+        this.counters = new AtomicLongArray((slots + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+    }
+
+    /**
+     * @param id an entity id
+     * @return false if the id was definitely never added (or was removed), true if it might be present
+     */
+    boolean mightContain(int id) {
+        long hash = mix(id);
+        int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            if (counter(slot(h1, h2, i)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param id an entity id to add
+     */
+    void add(int id) {
+        long hash = mix(id);
+        int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            increment(slot(h1, h2, i));
+        }
+        entries.increment();
+    }
+
+    /**
+     * @param id an entity id previously added
+     */
+    void remove(int id) {
+        long hash = mix(id);
+        int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            decrement(slot(h1, h2, i));
+        }
+        entries.decrement();
+    }
+
+    /**
+     * @return the false positive rate expected for the number of ids currently in the filter
+     */
+    double expectedFalsePositiveRate() {
+        long n = Math.max(0, entries.sum());
+        return Math.pow(1 - Math.exp(-(double) hashes * n / slots), hashes);
+    }
+
+    private int slot(int h1, int h2, int i) {
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % slots;
+    }
+
+    private long counter(int slot) {
+        long word = counters.get(slot / COUNTERS_PER_WORD);
+        return (word >>> shift(slot)) & COUNTER_MAX;
+    }
+
+    private void increment(int slot) {
+        int index = slot / COUNTERS_PER_WORD, shift = shift(slot);
+        long word;
+        do {
+            word = counters.get(index);
+            if (((word >>> shift) & COUNTER_MAX) == COUNTER_MAX) return; // saturated
+        } while (!counters.compareAndSet(index, word, word + (1L << shift)));
+    }
+
+    private void decrement(int slot) {
+        int index = slot / COUNTERS_PER_WORD, shift = shift(slot);
+        long word, counter;
+        do {
+            word = counters.get(index);
+            counter = (word >>> shift) & COUNTER_MAX;
+            if (counter == 0 || counter == COUNTER_MAX) return; // empty or saturated (its real count is unknown)
+        } while (!counters.compareAndSet(index, word, word - (1L << shift)));
+    }
+
+    private static int shift(int slot) {
+        return (slot % COUNTERS_PER_WORD) * COUNTER_BITS;
+    }
+
+    // 64 bit finalizer of MurmurHash3, the two halves are used as independent hashes
+    private static long mix(int id) {
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,1740 @@
+package cache;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A generic Cache managing entities for optimization
+ *
+ * @param <T> An object that implements Entity
+ */
+public class Cache<T extends Entity> {
+    // number of lock stripes, a power of two so an id is mapped to its stripe by masking
+    private static final int LOCK_STRIPES = 64;
+
+    private final Mode mode;
+    private EntityRepository<T> repo;
+    private Lock[] locks;
+    // loads from repo currently in flight, by entity id
+    private final ConcurrentHashMap<Integer, CompletableFuture<T>> loads = new ConcurrentHashMap<>();
+    // the entries, along with their secondary indexes
+    private final IndexedStore<T> map;
+    private final Subscriptions<T> subscriptions;
+    // delivers the deltas of batched subscriptions, created by the first one
+    private ScheduledExecutorService deltaFlusher; // guarded by the monitor of the cache
+    // delivers notifications asynchronously, null if subscribers are informed by the writing thread
+    private volatile SubscriberDispatcher<T> dispatcher;
+    // optional guard of the repo for ids that are definitely not there, null if not enabled
+    private volatile BloomFilter filter;
+    private final LongAdder filterRejections = new LongAdder();
+    private final LongAdder filterFalsePositives = new LongAdder();
+    // expiry and refresh durations in nanoseconds, 0 if disabled
+    private volatile long expireAfterWriteNanos;
+    private volatile long expireAfterAccessNanos;
+    private volatile long refreshAfterWriteNanos;
+    private volatile ExecutorService refresher;
+    // ids being refreshed, so a refresh is scheduled once however many gets find the entry due
+    private final Set<Integer> refreshing = ConcurrentHashMap.newKeySet();
+    // writes applied in cache but not yet in repo, null if write-behind is not enabled
+    private volatile WriteBehindQueue<T> writeBehind;
+    // takes periodic snapshots, null if not scheduled
+    private ScheduledExecutorService snapshotter;
+    // captures the changes made to the repo file by someone else, null if not watched
+    private RepoWatcher watcher;
+    private final StatsCounter stats = new StatsCounter();
+    // name the statistics are registered by in the platform MBean server, null if not registered
+    private ObjectName mbeanName;
+
+    /**
+     * Enum that indicate the operation occurred in cache
+     */
+    enum Operation {
+        ADD, UPDATE, REMOVE
+    }
+
+    /**
+     * merge two consecutive operations on the same entity into one
+     *
+     * @param older the operation applied first
+     * @param newer the operation applied after it
+     * @return an operation with the effect of both, null if they cancel each other
+     */
+    static Operation merge(Operation older, Operation newer) {
+        if (older == Operation.ADD) // the entity didn't exist before
+            return newer == Operation.REMOVE ? null : Operation.ADD;
+        // the entity existed before
+        return newer == Operation.REMOVE ? Operation.REMOVE : Operation.UPDATE;
+    }
+
+    /**
+     * Enum that indicate the mode of the cache
+     * BOUNDED behaves like LAZY but holds at most a fixed number of entries, evicted ones are reloaded from repo
+     */
+    public enum Mode {
+        EAGER, LAZY, BOUNDED
+    }
+
+    /**
+     * Cache constructor
+     *
+     * @param repositoryProvider A repo to attach
+     * @param mode               A mode to operate like (EAGER or LAZY)
+     */
+    Cache(RepositoryProvider repositoryProvider, Mode mode, Converter<T> converter) throws RepoAccessException {
+        this(repositoryProvider, mode, converter, 0);
+    }
+
+    /**
+     * Cache constructor
+     *
+     * @param repositoryProvider A repo to attach
+     * @param mode               A mode to operate like
+     * @param maxEntries         maximum number of cached entries, used only in BOUNDED mode
+     */
+    Cache(RepositoryProvider repositoryProvider, Mode mode, Converter<T> converter, int maxEntries)
+            throws RepoAccessException {
+        this(new JsonRepository<>(repositoryProvider, converter), mode, maxEntries);
+    }
+
+    /**
+     * Cache constructor
+     *
+     * @param repository A repo of entities to attach
+     * @param mode       A mode to operate like (EAGER or LAZY)
+     */
+    Cache(EntityRepository<T> repository, Mode mode) throws RepoAccessException {
+        this(repository, mode, 0);
+    }
+
+    /**
+     * Cache constructor
+     *
+     * @param repository A repo of entities to attach
+     * @param mode       A mode to operate like
+     * @param maxEntries maximum number of cached entries, used only in BOUNDED mode
+     */
+    Cache(EntityRepository<T> repository, Mode mode, int maxEntries) throws RepoAccessException {
+        this(repository, mode, storeOf(mode, maxEntries));
+    }
+
+    /**
+     * Cache constructor
+     *
+     * @param repository A repo of entities to attach
+     * @param mode       A mode to operate like
+     * @param store      the store to hold the cached entries in, for example an OffHeapStore for a big EAGER cache
+     */
+    Cache(EntityRepository<T> repository, Mode mode, EntityStore<CacheEntry<T>> store) throws RepoAccessException {
+        this(repository, mode, store, null, null);
+    }
+
+    /**
+     * EAGER Cache constructor, restoring the entities from a snapshot taken by snapshot and catching up with the
+     * repo changes made since. loads all entities from repo instead if there's no snapshot, it can't be read, or
+     * the repo can't tell the changes made since it was taken
+     *
+     * @param repository A repo of entities to attach
+     * @param snapshot   path of the snapshot file
+     * @param converter  converter of the entities to the binary records of the snapshot
+     */
+    Cache(EntityRepository<T> repository, String snapshot, BinaryConverter<T> converter) throws RepoAccessException {
+        this(repository, Mode.EAGER, storeOf(Mode.EAGER, 0), snapshot, converter);
+    }
+
+    private Cache(EntityRepository<T> repository, Mode mode, EntityStore<CacheEntry<T>> store, String snapshot,
+                  BinaryConverter<T> converter) throws RepoAccessException {
+        this.mode = mode;
+        this.repo = new TimedRepository<>(repository, stats);
+        this.map = new IndexedStore<>(store, mode == Mode.EAGER); // the ids of EAGER mode are all ids
+        this.locks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        if (mode == Mode.EAGER && (snapshot == null || !restore(snapshot, converter))) {
+            loadAll();
+        }
+        this.subscriptions = new Subscriptions<>();
+    }
+
+    private static <T extends Entity> EntityStore<CacheEntry<T>> storeOf(Mode mode, int maxEntries) {
+        if (mode != Mode.BOUNDED) return new IntHashStore<>();
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("BOUNDED mode requires a positive maxEntries: " + maxEntries);
+        return new SegmentedLruStore<>(maxEntries);
+    }
+
+    /**
+     * loads all entries from repo
+     *
+     * @throws RepoAccessException if loading all entities failed
+     */
+    private void loadAll() throws RepoAccessException {
+        // this implementation is critical to be like this (loading *all* or nothing) because of the logic implies
+        // from the mode of the cache to add/update/remove methods
+        // streamed so the entities are never all held in a list, parsed and converted in parallel
+        // on the common fork-join pool
+        try (Stream<T> entities = repo.stream()) {
+            if (entities == null) throw new RepoAccessException();
+            entities.parallel().forEach(entity -> {
+                if (entity == null) throw new UncheckedIOException(new IOException("Entity can't be converted"));
+                map.put(entity.getId(), new CacheEntry<>(entity));
+            });
+        } catch (UncheckedIOException e) {
+            throw new RepoAccessException();
+        }
+    }
+
+    /**
+     * restores the entities of a snapshot and applies the repo changes made since it was taken, all or nothing
+     *
+     * @return true if restored, false if all entities should be loaded from repo instead
+     */
+    private boolean restore(String path, BinaryConverter<T> converter) {
+        Snapshot<T> snapshot;
+        try {
+            snapshot = Snapshot.read(path, converter);
+        } catch (IOException e) {
+            System.err.println("Failed to read snapshot " + path + ": " + e.getMessage());
+            return false;
+        }
+        if (snapshot == null) return false;
+        Map<Integer, T> changes = repo.changesSince(snapshot.marker);
+        if (changes == null) return false; // rewritten since, or can't tell
+        for (T entity : snapshot.entities) {
+            map.put(entity.getId(), new CacheEntry<>(entity));
+        }
+        for (Map.Entry<Integer, T> change : changes.entrySet()) {
+            if (change.getValue() == null) map.remove(change.getKey());
+            else map.put(change.getKey(), new CacheEntry<>(change.getValue()));
+        }
+        return true;
+    }
+
+    /**
+     * get a cached entity
+     *
+     * @param eId the id of the entity
+     * @return entity required. null if not exists
+     */
+    T get(Integer eId) {
+        return get(eId.intValue());
+    }
+
+    /**
+     * get a cached entity. a hit doesn't allocate
+     *
+     * @param eId the id of the entity
+     * @return entity required. null if not exists
+     */
+    T get(int eId) {
+        // I decided to not inform the user in case of failure in accessing the repo
+        // (even though it might be there and not in the cache), because the user doesn't care:
+        // * if he can't get it it's not there!! **.
+        CacheEntry<T> entry = map.get(eId);
+        if (entry != null) {
+            T entity = read(eId, entry, System.nanoTime());
+            if (entity != null) {
+                stats.recordHits(1);
+                return entity;
+            }
+            stats.recordMisses(1);
+            // an expired entry is reloaded from repo in every mode (it's still in repo as far as EAGER mode knows)
+        } else {
+            stats.recordMisses(1);
+            // in LAZY and BOUNDED modes a miss doesn't mean the entity is not in repo
+            if (mode == Mode.EAGER || isFilteredOut(eId)) return null;
+        }
+        T entity;
+        // only one load per id is in flight, concurrent callers wait for its result instead of loading it again
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> inFlight = loads.putIfAbsent(eId, load);
+        if (inFlight != null) return inFlight.join();
+        try {
+            entity = load(eId);
+            load.complete(entity);
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(eId, load);
+        }
+        return entity;
+    }
+
+    /**
+     * get a cached entity along with its version, to update it later by compareAndUpdate.
+     * a hit reads the entry without locking, like get
+     *
+     * @param eId the id of the entity
+     * @return the entity and its version. null if not exists
+     */
+    Versioned<T> getVersioned(int eId) {
+        boolean loaded = false;
+        while (true) {
+            CacheEntry<T> entry = map.get(eId);
+            if (entry != null && read(eId, entry, System.nanoTime()) != null) {
+                if (!loaded) stats.recordHits(1);
+                return new Versioned<>(entry.entity, entry.version);
+            }
+            if (get(eId) == null) return null; // loads it into cache
+            loaded = true; // read its entry again, unless it was evicted meanwhile
+        }
+    }
+
+    /**
+     * get an entity only if it's held in cache, without accessing the repo
+     *
+     * @param eId the id of the entity
+     * @return the entity. null if not held in cache or expired
+     */
+    T getIfPresent(int eId) {
+        T entity = getIfHit(eId);
+        if (entity == null) stats.recordMisses(1);
+        return entity;
+    }
+
+    /**
+     * get an entity only if it's held in cache, recording a hit but not a miss. for a caller that reads a miss by
+     * get, which records the miss itself
+     *
+     * @param eId the id of the entity
+     * @return the entity. null if not held in cache or expired
+     */
+    T getIfHit(int eId) {
+        CacheEntry<T> entry = map.get(eId);
+        T entity = entry == null ? null : read(eId, entry, System.nanoTime());
+        if (entity != null) stats.recordHits(1);
+        return entity;
+    }
+
+    /**
+     * get several cached entities. the ones missing in LAZY and BOUNDED modes are loaded from repo at once
+     *
+     * @param eIds the ids of the entities
+     * @return the entities that exist, in the order of the ids given
+     */
+    ArrayList<T> getAll(Collection<Integer> eIds) {
+        Map<Integer, T> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Integer eId : eIds) {
+            CacheEntry<T> entry = map.get(eId);
+            T entity = entry == null ? null : read(eId, entry, now);
+            if (entity != null) found.put(eId, entity);
+            else if (entry != null || (mode != Mode.EAGER && !isFilteredOut(eId))) missing.add(eId);
+        }
+        stats.recordHits(found.size());
+        stats.recordMisses(eIds.size() - found.size());
+        if (!missing.isEmpty()) load(missing, found);
+        ArrayList<T> entities = new ArrayList<>(found.size());
+        for (Integer eId : eIds) {
+            T entity = found.get(eId);
+            if (entity != null) entities.add(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * get the entities of a range of ids. in EAGER mode the range is read from cache only. in LAZY and BOUNDED
+     * modes it's read from repo in one pass, taking the entities cached from cache. the others are loaded again
+     * holding their locks, like getAll, since an entity read without its lock may have been written meanwhile
+     *
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return the entities that exist in the range, ordered by id
+     * @throws RepoAccessException if the range can't be read from repo, in LAZY and BOUNDED modes
+     */
+    ArrayList<T> getRange(int fromId, int toId) throws RepoAccessException {
+        ArrayList<T> entities = new ArrayList<>();
+        if (mode == Mode.EAGER) {
+            for (int eId : map.idsBetween(fromId, toId)) {
+                T entity = get(eId);
+                if (entity != null) entities.add(entity);
+            }
+            return entities;
+        }
+        // taken before reading repo, so a write flushed meanwhile is read from repo
+        WriteBehindQueue<T> queue = writeBehind;
+        Map<Integer, WriteBehindQueue.Write<T>> writes = queue == null ? Map.of() : queue.writesBetween(fromId, toId);
+        ArrayList<T> read = repo.getRange(fromId, toId);
+        if (read == null) throw new RepoAccessException();
+        Set<Integer> ids = new HashSet<>();
+        for (T entity : read) {
+            if (entity != null) ids.add(entity.getId());
+        }
+        for (WriteBehindQueue.Write<T> write : writes.values()) { // added in cache but not in repo yet
+            if (write.operation != Operation.REMOVE) ids.add(write.entity.getId());
+        }
+        TreeMap<Integer, T> found = new TreeMap<>();
+        List<Integer> missing = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Integer eId : ids) {
+            CacheEntry<T> entry = map.get(eId);
+            if (entry != null && !isExpired(entry, now)) found.put(eId, entry.entity);
+            else missing.add(eId);
+        }
+        if (!missing.isEmpty() && !load(missing, found)) throw new RepoAccessException();
+        entities.addAll(found.values());
+        return entities;
+    }
+
+    /**
+     * stream the entities of a range of ids ordered by id, without holding them all. in EAGER mode the range is
+     * streamed from cache. in LAZY and BOUNDED modes it's streamed from repo, taking the entities cached from cache
+     * without caching the others (unless write-behind is enabled, then it's read like getRange).
+     * the stream must be closed. a repo whose stream blocks its writers until it's closed would block the writes of
+     * the thread reading it as well, DemoRepo's stream holds no lock
+     *
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return the entities that exist in the range, ordered by id
+     * @throws RepoAccessException if the range can't be read from repo, in LAZY and BOUNDED modes
+     */
+    Stream<T> streamRange(int fromId, int toId) throws RepoAccessException {
+        if (mode == Mode.EAGER) return map.idsBetween(fromId, toId).stream().map(this::get).filter(Objects::nonNull);
+        if (writeBehind != null) return getRange(fromId, toId).stream(); // merged with the writes not in repo yet
+        Stream<T> read = repo.streamRange(fromId, toId);
+        if (read == null) throw new RepoAccessException();
+        long now = System.nanoTime();
+        // no entity lock is taken while the repo may be locked by the stream, a writer locks them the other way
+        return read.filter(Objects::nonNull).map(entity -> {
+            CacheEntry<T> entry = map.get(entity.getId());
+            return entry != null && !isExpired(entry, now) ? entry.entity : entity;
+        });
+    }
+
+    /**
+     * declare a hash index of the cached entities by an attribute, to find the entities of an attribute value by
+     * query(index, value) without scanning them. the index is kept current by every write and load
+     *
+     * @param name      name of the index
+     * @param attribute extracts the indexed value of an entity, for example Dog::getRace
+     */
+    void addHashIndex(String name, Function<? super T, ?> attribute) {
+        addIndex(name, new SecondaryIndex<>(attribute, false));
+    }
+
+    /**
+     * declare a sorted index of the cached entities by an attribute, to find the entities of an attribute value by
+     * query(index, value) or of a range of values by query(index, from, to) without scanning them.
+     * the index is kept current by every write and load
+     *
+     * @param name      name of the index
+     * @param attribute extracts the indexed value of an entity, for example Dog::getWeight
+     */
+    <K extends Comparable<? super K>> void addSortedIndex(String name, Function<? super T, K> attribute) {
+        addIndex(name, new SecondaryIndex<>(attribute, true));
+    }
+
+    private void addIndex(String name, SecondaryIndex<T> index) {
+        // writers are blocked while the entities cached so far are indexed
+        for (Lock lock : locks) acquire(lock);
+        try {
+            map.addIndex(name, index);
+        } finally {
+            for (Lock lock : locks) lock.unlock();
+        }
+    }
+
+    /**
+     * find the cached entities matching a predicate by scanning them all.
+     * in LAZY and BOUNDED modes only the entities currently held in cache are found
+     *
+     * @param predicate the condition of the entities to find
+     * @return the entities matching, in no particular order
+     */
+    List<T> query(Predicate<? super T> predicate) {
+        List<T> found = new ArrayList<>();
+        long now = System.nanoTime();
+        map.forEach(entry -> {
+            if (!isExpired(entry, now) && predicate.test(entry.entity)) found.add(entry.entity);
+        });
+        return found;
+    }
+
+    /**
+     * find the cached entities of an attribute value by an index.
+     * in LAZY and BOUNDED modes only the entities currently held in cache are found
+     *
+     * @param index name of a hash or sorted index
+     * @param value the attribute value of the entities to find
+     * @return the entities found, in no particular order
+     */
+    List<T> query(String index, Object value) {
+        SecondaryIndex<T> secondary = indexOf(index);
+        return resolve(secondary, secondary.get(value), found -> Objects.equals(found, value));
+    }
+
+    /**
+     * find the cached entities of a range of attribute values by a sorted index.
+     * in LAZY and BOUNDED modes only the entities currently held in cache are found
+     *
+     * @param index name of a sorted index
+     * @param from  lowest attribute value, inclusive
+     * @param to    highest attribute value, inclusive
+     * @return the entities found, ordered by the attribute
+     */
+    @SuppressWarnings("unchecked")
+    <K extends Comparable<? super K>> List<T> query(String index, K from, K to) {
+        SecondaryIndex<T> secondary = indexOf(index);
+        return resolve(secondary, secondary.getRange(from, to),
+                found -> found != null && from.compareTo((K) found) <= 0 && to.compareTo((K) found) >= 0);
+    }
+
+    private SecondaryIndex<T> indexOf(String name) {
+        SecondaryIndex<T> index = map.getIndex(name);
+        if (index == null) throw new IllegalArgumentException("no index named " + name);
+        return index;
+    }
+
+    /**
+     * get the entities of the ids found by an index, skipping the ones expired, evicted or changed meanwhile
+     *
+     * @param index   the index
+     * @param ids     the ids found
+     * @param matches whether an attribute value is still one of the values looked up
+     */
+    private List<T> resolve(SecondaryIndex<T> index, List<Integer> ids, Predicate<Object> matches) {
+        List<T> found = new ArrayList<>(ids.size());
+        long now = System.nanoTime();
+        for (int eId : ids) {
+            CacheEntry<T> entry = map.get(eId);
+            if (entry == null) {
+                unindexEvicted(index, eId);
+                continue;
+            }
+            if (!isExpired(entry, now) && matches.test(index.valueOf(entry.entity))) found.add(entry.entity);
+        }
+        return found;
+    }
+
+    /**
+     * unindex an id that is not held in cache, evicted by a bounded store without being unindexed
+     */
+    private void unindexEvicted(SecondaryIndex<T> index, int eId) {
+        Lock lock = lockFor(eId);
+        acquire(lock);
+        try {
+            if (map.get(eId) == null) index.remove(eId); // unless loaded meanwhile
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * read a cached entry, recording the access and refreshing it if needed
+     *
+     * @param eId   the id of the entity
+     * @param entry the cached entry
+     * @param now   current System.nanoTime()
+     * @return the entity. null if the entry expired
+     */
+    private T read(int eId, CacheEntry<T> entry, long now) {
+        if (isExpired(entry, now)) return null;
+        if (expireAfterAccessNanos > 0) entry.setAccessTime(now);
+        if (refreshAfterWriteNanos > 0 && now - entry.writeTime >= refreshAfterWriteNanos) refresh(eId, entry);
+        return entry.entity;
+    }
+
+    /**
+     * load several entities from repo into cache by a single call to repo
+     *
+     * @param eIds   the ids of the entities
+     * @param loaded the map to put the entities loaded in, by their ids
+     * @return false if repo is not accessible, then only the entities written meanwhile are loaded
+     */
+    private boolean load(List<Integer> eIds, Map<Integer, T> loaded) {
+        int[] stripes = lockAll(eIds);
+        try {
+            List<Integer> missing = new ArrayList<>();
+            long now = System.nanoTime();
+            for (Integer eId : eIds) {
+                CacheEntry<T> entry = map.get(eId);
+                if (entry != null && !isExpired(entry, now)) loaded.put(eId, entry.entity); // written meanwhile
+                else missing.add(eId);
+            }
+            WriteBehindQueue<T> queue = writeBehind;
+            if (queue != null) { // entities with writes not in repo yet are taken from the queue
+                List<Integer> inRepo = new ArrayList<>();
+                for (Integer eId : missing) {
+                    WriteBehindQueue.Write<T> write = queue.lookup(eId);
+                    if (write == null) inRepo.add(eId);
+                    else if (write.operation != Operation.REMOVE) {
+                        map.put(eId, new CacheEntry<>(write.entity));
+                        loaded.put(eId, write.entity);
+                    }
+                }
+                missing = inRepo;
+            }
+            if (missing.isEmpty()) return true;
+            ArrayList<T> entities = repo.getAll(missing);
+            if (entities == null) { // repo not accessible
+                stats.recordLoads(missing.size(), 0, missing.size());
+                return false;
+            }
+            for (T entity : entities) {
+                if (entity == null) continue;
+                map.put(entity.getId(), new CacheEntry<>(entity));
+                loaded.put(entity.getId(), entity);
+            }
+            int notFound = 0;
+            for (Integer eId : missing) {
+                if (loaded.containsKey(eId)) continue;
+                notFound++;
+                if (map.get(eId) != null) map.remove(eId); // expired and removed from repo meanwhile
+                else if (filter != null) filterFalsePositives.increment();
+            }
+            stats.recordLoads(missing.size(), notFound, 0);
+        } finally {
+            unlockAll(stripes);
+        }
+        return true;
+    }
+
+    /**
+     * load an entity from repo into cache
+     *
+     * @param eId the id of the entity
+     * @return entity loaded. null if not exists in repo or not accessible
+     */
+    private T load(int eId) {
+        // loading under the entity's lock so a concurrent writer can't be overridden by a stale entity from repo
+        Lock lock = lockFor(eId);
+        acquire(lock);
+        try {
+            CacheEntry<T> entry = map.get(eId);
+            if (entry != null && !isExpired(entry, System.nanoTime()))
+                return entry.entity; // written by another thread while waiting for the lock
+            T entity;
+            try {
+                entity = fetch(eId);
+            } catch (RepoAccessException e) {
+                stats.recordLoads(1, 0, 1);
+                // an expired entry is kept until repo is accessible again, EAGER mode takes a miss as not exists
+                return entry == null ? null : entry.entity;
+            }
+            stats.recordLoads(1, entity == null ? 1 : 0, 0);
+            if (entity == null) {
+                if (entry != null) map.remove(eId); // expired and removed from repo meanwhile
+                else if (filter != null) filterFalsePositives.increment();
+                return null;
+            }
+            map.put(eId, entry == null ? new CacheEntry<>(entity) : entry.reloaded(entity));
+            return entity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * get an entity from repo, or from the write-behind queue if it has a write of the entity not in repo yet
+     *
+     * @param eId the id of the entity
+     * @return the entity. null if not exists
+     * @throws RepoAccessException if repo is not accessible
+     */
+    private T fetch(int eId) throws RepoAccessException {
+        WriteBehindQueue<T> queue = writeBehind;
+        WriteBehindQueue.Write<T> write = queue == null ? null : queue.lookup(eId);
+        if (write == null) return repo.find(eId);
+        return write.operation == Operation.REMOVE ? null : write.entity;
+    }
+
+    /**
+     * add an entity to cache
+     *
+     * @param entity en entity to add
+     * @return true if added successfully, false if already exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean add(T entity) throws RepoAccessException {
+        // I chose this implementation over a simple one of using Cache.get to save one redundant expansive call to
+        // repo.get in Cache.get
+        if (writeBehind != null) {
+            Boolean added = writeBehind(Operation.ADD, entity);
+            if (added != null) {
+                if (added) notifyUsers(Operation.ADD, entity);
+                return added;
+            }
+        }
+        if (map.get(entity.getId()) != null) return false; // already in map of cache (and also in repo obviously)
+        Lock lock = lockFor(entity.getId());
+        acquire(lock);
+        try {
+            switch (repo.add(entity)) {
+                case SUCCESS: { // the entity wasn't in repo and should be add to Cache as well
+                    map.put(entity.getId(), new CacheEntry<>(entity));
+                    BloomFilter filter = this.filter;
+                    if (filter != null) filter.add(entity.getId());
+                    break;
+                }
+                case FAILURE:
+                    throw new RepoAccessException(entity.getId());
+                case ALREADY_EXISTS: {
+                    // in repo but should be added to cache as well
+                    if (mode != Mode.EAGER) map.put(entity.getId(), new CacheEntry<>(entity));
+                    BloomFilter filter = this.filter;
+                    if (filter != null && !filter.mightContain(entity.getId()))
+                        filter.add(entity.getId()); // added to repo by someone else
+                    return false;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyUsers(Operation.ADD, entity);
+        return true;
+    }
+
+    /**
+     * updates an entity in cache
+     *
+     * @param entity An entity to update
+     * @return true if updated successfully, false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean update(T entity) throws RepoAccessException {
+        if (writeBehind != null) {
+            Boolean updated = writeBehind(Operation.UPDATE, entity);
+            if (updated != null) {
+                if (updated) notifyUsers(Operation.UPDATE, entity);
+                return updated;
+            }
+        }
+        if (map.get(entity.getId()) == null && (mode == Mode.EAGER || isFilteredOut(entity.getId())))
+            return false; // not in map of cache (and also in repo obviously)
+        Lock lock = lockFor(entity.getId());
+        acquire(lock);
+        try {
+            switch (repo.update(entity)) {
+                case SUCCESS:
+                    map.put(entity.getId(), new CacheEntry<>(entity)); // in EAGER mode it's always a replacement
+                    break;
+                case FAILURE:
+                    throw new RepoAccessException(entity.getId());
+                case NOT_EXISTS:
+                    return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyUsers(Operation.UPDATE, entity);
+        return true;
+    }
+
+    /**
+     * update an entity only if its cached entry is still of the version read by getVersioned, so a
+     * read-modify-write can't lose an update made meanwhile. a conflict is detected by comparing versions, without
+     * locking or accessing the repo, and a successful update holds only the lock of the entity's stripe as update.
+     * a reload of the entity from repo (a refresh, or a load once expired or evicted) keeps its version only if the
+     * entity reloaded equals the cached one, so for entities that don't override equals it fails the update as a
+     * write would, and the caller reads the entity again
+     *
+     * @param entity          an entity to update
+     * @param expectedVersion the version the entity was read at
+     * @return true if updated, false if the entity was written, evicted or removed since it was read
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean compareAndUpdate(T entity, long expectedVersion) throws RepoAccessException {
+        int eId = entity.getId();
+        if (!isVersion(eId, expectedVersion)) return false;
+        Lock lock = lockFor(eId);
+        acquire(lock);
+        try {
+            // checked again under the lock, every writer holds it until its entry replaced the cached one
+            if (!isVersion(eId, expectedVersion)) return false;
+            WriteBehindQueue<T> queue = writeBehind;
+            if (queue != null) {
+                map.put(eId, new CacheEntry<>(entity));
+                queue.enqueue(Operation.UPDATE, entity);
+            } else {
+                switch (repo.update(entity)) {
+                    case SUCCESS:
+                        map.put(eId, new CacheEntry<>(entity));
+                        break;
+                    case FAILURE:
+                        throw new RepoAccessException(eId);
+                    case NOT_EXISTS:
+                        return false;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyUsers(Operation.UPDATE, entity);
+        return true;
+    }
+
+    private boolean isVersion(int eId, long version) {
+        CacheEntry<T> entry = map.get(eId);
+        return entry != null && entry.version == version;
+    }
+
+    /**
+     * removes an entity from cache
+     *
+     * @param entity An entity to remove
+     * @return true if removed successfully false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean remove(T entity) throws RepoAccessException {
+        if (writeBehind != null) {
+            Boolean removed = writeBehind(Operation.REMOVE, entity);
+            if (removed != null) {
+                if (removed) notifyUsers(Operation.REMOVE, entity);
+                return removed;
+            }
+        }
+        if (map.get(entity.getId()) == null && (mode == Mode.EAGER || isFilteredOut(entity.getId())))
+            return false; // not in map of cache (and also in repo obviously)
+        Lock lock = lockFor(entity.getId());
+        acquire(lock);
+        try {
+            switch (repo.remove(entity)) {
+                case SUCCESS: {
+                    map.remove(entity.getId()); // will remove either way (if exists in map or not)
+                    BloomFilter filter = this.filter;
+                    if (filter != null) filter.remove(entity.getId());
+                    break;
+                }
+                case FAILURE:
+                    throw new RepoAccessException(entity.getId());
+                case NOT_EXISTS:
+                    return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyUsers(Operation.REMOVE, entity);
+        return true;
+    }
+
+    /**
+     * removes an entity from cache by its id
+     *
+     * @param eId the id of the entity to remove
+     * @return true if removed successfully false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean remove(int eId) throws RepoAccessException {
+        T entity = get(eId); // the repo removes an entity given, in LAZY mode it may have to be loaded first
+        return entity != null && remove(entity);
+    }
+
+    /**
+     * add several entities to cache by a single call to repo, subscribers are informed once for the batch
+     *
+     * @param entities entities to add
+     * @return for every entity, true if added successfully, false if already exists
+     * @throws RepoAccessException When the repo is not accessible, after the rest of the batch is applied
+     */
+    boolean[] addAll(List<T> entities) throws RepoAccessException {
+        if (writeBehind != null) {
+            boolean[] added = writeBehindAll(Operation.ADD, entities);
+            if (added != null) return added;
+        }
+        boolean[] added = new boolean[entities.size()];
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < entities.size(); i++) {
+            if (map.get(entities.get(i).getId()) == null) batch.add(i); // others already in cache (and in repo)
+        }
+        if (batch.isEmpty()) return added;
+        List<T> toAdd = select(entities, batch);
+        ArrayList<T> done = new ArrayList<>();
+        RepoAccessException failure = null;
+        int[] stripes = lockAll(ids(toAdd));
+        try {
+            ArrayList<RepositoryProvider.ReturnSate> returnSates = repo.addAll(toAdd);
+            BloomFilter filter = this.filter;
+            for (int i = 0; i < toAdd.size(); i++) {
+                T entity = toAdd.get(i);
+                switch (returnSates.get(i)) {
+                    case SUCCESS: {
+                        map.put(entity.getId(), new CacheEntry<>(entity));
+                        if (filter != null) filter.add(entity.getId());
+                        added[batch.get(i)] = true;
+                        done.add(entity);
+                        break;
+                    }
+                    case FAILURE: {
+                        if (failure == null) failure = new RepoAccessException(entity.getId());
+                        break;
+                    }
+                    case ALREADY_EXISTS: {
+                        // in repo but should be added to cache as well, unless added earlier in this batch
+                        if (mode != Mode.EAGER && map.get(entity.getId()) == null)
+                            map.put(entity.getId(), new CacheEntry<>(entity));
+                        if (filter != null && !filter.mightContain(entity.getId())) filter.add(entity.getId());
+                        break;
+                    }
+                }
+            }
+        } finally {
+            unlockAll(stripes);
+        }
+        if (!done.isEmpty()) notifyUsers(Operation.ADD, done);
+        if (failure != null) throw failure;
+        return added;
+    }
+
+    /**
+     * update several entities in cache by a single call to repo, subscribers are informed once for the batch
+     *
+     * @param entities entities to update
+     * @return for every entity, true if updated successfully, false if not exists
+     * @throws RepoAccessException When the repo is not accessible, after the rest of the batch is applied
+     */
+    boolean[] updateAll(List<T> entities) throws RepoAccessException {
+        if (writeBehind != null) {
+            boolean[] updated = writeBehindAll(Operation.UPDATE, entities);
+            if (updated != null) return updated;
+        }
+        boolean[] updated = new boolean[entities.size()];
+        List<Integer> batch = existing(entities);
+        if (batch.isEmpty()) return updated;
+        List<T> toUpdate = select(entities, batch);
+        ArrayList<T> done = new ArrayList<>();
+        RepoAccessException failure = null;
+        int[] stripes = lockAll(ids(toUpdate));
+        try {
+            ArrayList<RepositoryProvider.ReturnSate> returnSates = repo.updateAll(toUpdate);
+            for (int i = 0; i < toUpdate.size(); i++) {
+                T entity = toUpdate.get(i);
+                if (returnSates.get(i) == RepositoryProvider.ReturnSate.SUCCESS) {
+                    map.put(entity.getId(), new CacheEntry<>(entity));
+                    updated[batch.get(i)] = true;
+                    done.add(entity);
+                } else if (returnSates.get(i) == RepositoryProvider.ReturnSate.FAILURE && failure == null) {
+                    failure = new RepoAccessException(entity.getId());
+                }
+            }
+        } finally {
+            unlockAll(stripes);
+        }
+        if (!done.isEmpty()) notifyUsers(Operation.UPDATE, done);
+        if (failure != null) throw failure;
+        return updated;
+    }
+
+    /**
+     * remove several entities from cache by a single call to repo, subscribers are informed once for the batch
+     *
+     * @param entities entities to remove
+     * @return for every entity, true if removed successfully, false if not exists
+     * @throws RepoAccessException When the repo is not accessible, after the rest of the batch is applied
+     */
+    boolean[] removeAll(List<T> entities) throws RepoAccessException {
+        if (writeBehind != null) {
+            boolean[] removed = writeBehindAll(Operation.REMOVE, entities);
+            if (removed != null) return removed;
+        }
+        boolean[] removed = new boolean[entities.size()];
+        List<Integer> batch = existing(entities);
+        if (batch.isEmpty()) return removed;
+        List<T> toRemove = select(entities, batch);
+        ArrayList<T> done = new ArrayList<>();
+        RepoAccessException failure = null;
+        int[] stripes = lockAll(ids(toRemove));
+        try {
+            ArrayList<RepositoryProvider.ReturnSate> returnSates = repo.removeAll(toRemove);
+            BloomFilter filter = this.filter;
+            for (int i = 0; i < toRemove.size(); i++) {
+                T entity = toRemove.get(i);
+                if (returnSates.get(i) == RepositoryProvider.ReturnSate.SUCCESS) {
+                    map.remove(entity.getId());
+                    if (filter != null) filter.remove(entity.getId());
+                    removed[batch.get(i)] = true;
+                    done.add(entity);
+                } else if (returnSates.get(i) == RepositoryProvider.ReturnSate.FAILURE && failure == null) {
+                    failure = new RepoAccessException(entity.getId());
+                }
+            }
+        } finally {
+            unlockAll(stripes);
+        }
+        if (!done.isEmpty()) notifyUsers(Operation.REMOVE, done);
+        if (failure != null) throw failure;
+        return removed;
+    }
+
+    /**
+     * apply a write to cache and queue it to be written to repo by the write-behind queue
+     *
+     * @param operation the operation to apply
+     * @param entity    the entity to write
+     * @return true if applied, false if the entity exists (ADD) or not exists (UPDATE and REMOVE).
+     * null if write-behind was disabled meanwhile
+     */
+    private Boolean writeBehind(Operation operation, T entity) throws RepoAccessException {
+        int eId = entity.getId();
+        Lock lock = lockFor(eId);
+        acquire(lock);
+        try {
+            // read under the lock, so once disabled no write is queued after the queue's last flush
+            WriteBehindQueue<T> queue = writeBehind;
+            if (queue == null) return null;
+            boolean exists = map.get(eId) != null || (mode != Mode.EAGER && !isFilteredOut(eId) && fetch(eId) != null);
+            if (exists == (operation == Operation.ADD)) return false;
+            BloomFilter filter = this.filter;
+            if (operation == Operation.REMOVE) {
+                map.remove(eId);
+                if (filter != null) filter.remove(eId);
+            } else {
+                map.put(eId, new CacheEntry<>(entity));
+                if (operation == Operation.ADD && filter != null) filter.add(eId);
+            }
+            queue.enqueue(operation, entity);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * apply several writes by the write-behind queue, subscribers are informed once for the batch
+     *
+     * @return for every entity, whether it was applied (see writeBehind). null if write-behind was disabled
+     * @throws RepoAccessException if write-behind was disabled in the middle of the batch and writing the rest of
+     *                             it through to repo failed
+     */
+    private boolean[] writeBehindAll(Operation operation, List<T> entities) throws RepoAccessException {
+        boolean[] applied = new boolean[entities.size()];
+        ArrayList<T> done = new ArrayList<>();
+        int i = 0;
+        for (; i < entities.size(); i++) {
+            Boolean result = writeBehind(operation, entities.get(i));
+            if (result == null) break;
+            applied[i] = result;
+            if (result) done.add(entities.get(i));
+        }
+        if (i == 0 && !entities.isEmpty()) return null;
+        if (!done.isEmpty()) notifyUsers(operation, done);
+        for (; i < entities.size(); i++) { // disabled in the middle of the batch, the rest is written through
+            T entity = entities.get(i);
+            applied[i] = operation == Operation.ADD ? add(entity) :
+                    operation == Operation.UPDATE ? update(entity) : remove(entity);
+        }
+        return applied;
+    }
+
+    /**
+     * @return positions of the entities that might be in repo (see update and remove)
+     */
+    private List<Integer> existing(List<T> entities) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < entities.size(); i++) {
+            int eId = entities.get(i).getId();
+            if (map.get(eId) != null || (mode != Mode.EAGER && !isFilteredOut(eId))) positions.add(i);
+        }
+        return positions;
+    }
+
+    private static <E> List<E> select(List<E> list, List<Integer> positions) {
+        List<E> selected = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            selected.add(list.get(position));
+        }
+        return selected;
+    }
+
+    private static <E extends Entity> List<Integer> ids(List<E> entities) {
+        List<Integer> ids = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            ids.add(entity.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * reload entities from repo once the given time passed since they were loaded or written.
+     * an expired entity is reloaded by the next get, 0 disables the expiry
+     *
+     * @param duration time an entity is valid after it's loaded or written
+     * @param unit     unit of duration
+     */
+    void expireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * reload entities from repo once the given time passed since they were last read, loaded or written.
+     * an expired entity is reloaded by the next get, 0 disables the expiry
+     *
+     * @param duration time an entity is valid after its last access
+     * @param unit     unit of duration
+     */
+    void expireAfterAccess(long duration, TimeUnit unit) {
+        this.expireAfterAccessNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * reload entities from repo in the background once the given time passed since they were loaded or written.
+     * the reload is triggered by a get, which returns the current entity without waiting for it. to keep hot
+     * entities from ever blocking on a reload, set it shorter than the expiry. 0 disables the refresh
+     *
+     * @param duration time after which a read entity is refreshed
+     * @param unit     unit of duration
+     */
+    void refreshAfterWrite(long duration, TimeUnit unit) {
+        if (duration > 0 && refresher == null) {
+            synchronized (this) {
+                if (refresher == null) {
+                    refresher = Executors.newFixedThreadPool(2, r -> {
+                        Thread thread = new Thread(r, "cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        this.refreshAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * @param entry a cached entry
+     * @param now   current System.nanoTime()
+     * @return true if the entry expired and should be reloaded from repo
+     */
+    private boolean isExpired(CacheEntry<T> entry, long now) {
+        long afterWrite = expireAfterWriteNanos, afterAccess = expireAfterAccessNanos;
+        return (afterWrite > 0 && now - entry.writeTime >= afterWrite) ||
+                (afterAccess > 0 && now - entry.getAccessTime() >= afterAccess);
+    }
+
+    /**
+     * reloads an entry from repo in the background, unless it's already being refreshed
+     *
+     * @param eId   the id of the entity
+     * @param entry the entry to refresh
+     */
+    private void refresh(int eId, CacheEntry<T> entry) {
+        ExecutorService refresher = this.refresher;
+        // by id, a store may return a new copy of the entry on every get
+        if (refresher == null || !refreshing.add(eId)) return;
+        try {
+            refresher.execute(() -> {
+                Lock lock = lockFor(eId);
+                acquire(lock);
+                try {
+                    CacheEntry<T> current = map.get(eId);
+                    // compared by version, a store may hold the entry serialized and return a copy of it
+                    if (current == null || current.version != entry.version)
+                        return; // written or removed meanwhile, nothing to refresh
+                    T entity = fetch(eId);
+                    stats.recordLoads(1, entity == null ? 1 : 0, 0);
+                    if (entity == null) map.remove(eId); // removed from repo by someone else
+                    else map.put(eId, current.reloaded(entity));
+                } catch (RepoAccessException e) {
+                    stats.recordLoads(1, 0, 1); // the entry is kept, and refreshed again by a following get
+                } finally {
+                    lock.unlock();
+                    refreshing.remove(eId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(eId); // closed meanwhile
+        }
+    }
+
+    /**
+     * enables write-behind: writes are applied in cache and subscribers are informed right away, while repo is
+     * written in the background. writes to the same entity are merged, and written in batches once the flush
+     * interval passed. a write that failed is retried by the following flushes and dropped after maxRetries, then
+     * the entity in repo is put back in cache (and informed of) and the next flush reports it.
+     * a write behind doesn't throw RepoAccessException, use flush to know it reached the repo
+     *
+     * @param flushInterval maximum time a write stays in cache only, the window in which it can be lost
+     * @param unit          unit of flushInterval
+     * @param maxRetries    number of times a failed write is retried before it's dropped
+     */
+    synchronized void enableWriteBehind(long flushInterval, TimeUnit unit, int maxRetries) {
+        if (flushInterval <= 0) throw new IllegalArgumentException("flushInterval must be positive: " + flushInterval);
+        if (writeBehind != null) throw new IllegalStateException("write-behind is already enabled");
+        // rolled back off the writer thread, a flush may be waited for holding the entity locks
+        writeBehind = new WriteBehindQueue<>(repo, flushInterval, unit, maxRetries,
+                dropped -> CompletableFuture.runAsync(() -> rollback(dropped.entity.getId())));
+    }
+
+    /**
+     * wait for the writes made so far to be written to repo. does nothing if write-behind is not enabled
+     *
+     * @throws RepoAccessException if some writes failed and are still waiting for a retry, or some were dropped since
+     *                             the previous flush
+     */
+    void flush() throws RepoAccessException {
+        WriteBehindQueue<T> queue = writeBehind;
+        if (queue != null) queue.flush();
+    }
+
+    /**
+     * write a snapshot of the cache, to restart quickly by the snapshot constructor. writers are blocked while the
+     * entities are collected (and the writes behind are flushed), not while the marker of repo is taken (which may
+     * read the whole repo) nor while the file is written. EAGER mode only
+     *
+     * @param path      path of the snapshot file, replaced atomically
+     * @param converter converter of the entities to binary records
+     * @throws RepoAccessException if flushing the writes behind failed
+     * @throws IOException         if writing the file failed
+     */
+    void snapshot(String path, BinaryConverter<T> converter) throws RepoAccessException, IOException {
+        if (mode != Mode.EAGER) throw new IllegalStateException("only an EAGER cache can be snapshot");
+        // taken before the entities: the changes made between them are in the snapshot and caught up with again on
+        // restore, which ends with the latest entity of each, while a marker taken after could miss some
+        String marker = repo.marker();
+        if (marker == null) throw new IllegalStateException("repo doesn't provide markers");
+        List<T> entities = new ArrayList<>(map.size());
+        for (Lock lock : locks) acquire(lock);
+        try {
+            flush(); // the snapshot holds no write that isn't in repo
+            map.forEach(entry -> entities.add(entry.entity));
+        } finally {
+            for (Lock lock : locks) lock.unlock();
+        }
+        Snapshot.write(path, marker, entities, converter);
+    }
+
+    /**
+     * take a snapshot periodically in the background, a failed one is reported and retried by the next period
+     *
+     * @param period    time between snapshots
+     * @param unit      unit of period
+     * @param path      path of the snapshot file
+     * @param converter converter of the entities to binary records
+     */
+    synchronized void snapshotEvery(long period, TimeUnit unit, String path, BinaryConverter<T> converter) {
+        if (mode != Mode.EAGER) throw new IllegalStateException("only an EAGER cache can be snapshot");
+        if (period <= 0) throw new IllegalArgumentException("period must be positive: " + period);
+        if (snapshotter != null) throw new IllegalStateException("snapshots are already scheduled");
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(path, converter);
+            } catch (RepoAccessException | IOException | RuntimeException e) {
+                System.err.println("Failed to take snapshot " + path + ": " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * watch the repo file for changes made by someone else, like another process holding a cache of it: they are
+     * applied in cache and subscribers are informed of them, as if made through the cache. a repo that tells its
+     * external changes (see RepositoryProvider.externalChanges) has them read incrementally, otherwise or once they
+     * can't be told the cache is synced with the whole repo
+     *
+     * @param filepath path of the repo file
+     * @throws IOException if the file can't be watched
+     */
+    synchronized void watchRepo(String filepath) throws IOException {
+        if (watcher != null) throw new IllegalStateException("repo is already watched");
+        repo.externalChanges(); // the changes are recorded by repo from the first call on
+        watcher = new RepoWatcher(Paths.get(filepath), this::captureChanges);
+    }
+
+    /**
+     * apply the changes made to repo by someone else and inform subscribers of them. the entities changed are read
+     * again holding their locks, so a write of this cache made meanwhile is never overridden by an older external
+     * one. the events of the cache's own writes tell no change and block no writer. only when the changes can't be
+     * told, all the writers are blocked while the cache is synced with the whole repo
+     */
+    void captureChanges() {
+        Map<Operation, List<T>> events = new EnumMap<>(Operation.class);
+        Map<Integer, T> changes = repo.externalChanges();
+        if (changes != null && changes.isEmpty()) return;
+        if (changes != null) {
+            int[] stripes = lockAll(changes.keySet());
+            try {
+                ArrayList<T> entities = repo.getAll(changes.keySet());
+                if (entities == null) {
+                    changes = null;
+                } else {
+                    Map<Integer, T> current = new HashMap<>();
+                    for (T entity : entities) {
+                        if (entity != null) current.put(entity.getId(), entity);
+                    }
+                    for (Integer eId : changes.keySet()) {
+                        applyChange(eId, current.get(eId), events); // not found if removed
+                    }
+                }
+            } finally {
+                unlockAll(stripes);
+            }
+        }
+        if (changes == null) {
+            for (Lock lock : locks) acquire(lock);
+            try {
+                resync(events);
+            } finally {
+                for (Lock lock : locks) lock.unlock();
+            }
+        }
+        for (Map.Entry<Operation, List<T>> event : events.entrySet()) {
+            notifyUsers(event.getKey(), event.getValue());
+        }
+    }
+
+    /**
+     * sync the cache with the whole repo, when the changes made to it can't be told. every entity held is
+     * informed of as updated, since it may have been. must be called holding all the locks
+     */
+    private void resync(Map<Operation, List<T>> events) {
+        List<Integer> held = new ArrayList<>(map.size());
+        map.forEach(entry -> held.add(entry.entity.getId()));
+        BloomFilter filter = this.filter;
+        // a filter must learn the ids added as well, so all of repo is read for it
+        ArrayList<T> entities = mode == Mode.EAGER || filter != null ? repo.getAll() : repo.getAll(held);
+        if (entities == null) {
+            System.err.println("Failed to sync cache with repo");
+            return;
+        }
+        Set<Integer> found = new HashSet<>();
+        for (T entity : entities) {
+            if (entity == null) continue;
+            found.add(entity.getId());
+            if (mode == Mode.EAGER || map.get(entity.getId()) != null) applyChange(entity.getId(), entity, events);
+            else if (filter != null) filter.add(entity.getId());
+        }
+        for (int eId : held) {
+            if (!found.contains(eId)) applyChange(eId, null, events);
+        }
+    }
+
+    /**
+     * apply a change made to repo by someone else, unless the entity has a write behind not in repo yet, which
+     * overrides it. in LAZY and BOUNDED modes an entity not held in cache is not loaded, and is informed of as
+     * updated unless the membership filter tells it's new. must be called holding the lock of the entity
+     *
+     * @param entity the entity changed, null if removed
+     * @param events the changes to inform subscribers of, by operation
+     */
+    private void applyChange(int eId, T entity, Map<Operation, List<T>> events) {
+        WriteBehindQueue<T> queue = writeBehind;
+        if (queue != null && queue.lookup(eId) != null) return;
+        CacheEntry<T> entry = map.get(eId);
+        BloomFilter filter = this.filter;
+        Operation operation;
+        if (entity == null) {
+            if (entry == null) return; // nothing to inform of without the entity
+            map.remove(eId);
+            if (filter != null) filter.remove(eId);
+            entity = entry.entity;
+            operation = Operation.REMOVE;
+        } else {
+            boolean existed = entry != null ||
+                    (mode != Mode.EAGER && (filter == null || filter.mightContain(eId)));
+            if (entry != null || mode == Mode.EAGER) map.put(eId, new CacheEntry<>(entity));
+            if (filter != null) filter.add(eId); // counted again if existed, which only keeps it longer
+            operation = existed ? Operation.UPDATE : Operation.ADD;
+        }
+        events.computeIfAbsent(operation, op -> new ArrayList<>()).add(entity);
+    }
+
+    /**
+     * put the entity in repo back in cache after its write behind was dropped, so the lost write isn't served
+     * anymore, unless a newer write of it is queued. subscribers are informed of the rollback as a change
+     */
+    private void rollback(int eId) {
+        Map<Operation, List<T>> events = new EnumMap<>(Operation.class);
+        Lock lock = lockFor(eId);
+        acquire(lock);
+        try {
+            WriteBehindQueue<T> queue = writeBehind;
+            if (queue != null && queue.lookup(eId) != null) return;
+            T entity;
+            try {
+                entity = repo.find(eId);
+            } catch (RepoAccessException e) {
+                // the entity in repo can't be told, it's loaded again by the next read (EAGER mode can't miss it)
+                if (mode != Mode.EAGER) map.remove(eId);
+                return;
+            }
+            applyChange(eId, entity, events);
+        } finally {
+            lock.unlock();
+        }
+        for (Map.Entry<Operation, List<T>> event : events.entrySet()) {
+            notifyUsers(event.getKey(), event.getValue());
+        }
+    }
+
+    /**
+     * disable write-behind, async notifications and refreshes, stop the periodic snapshots and watching the repo,
+     * and unregister the MBean: the writes made so far are written to repo and their notifications delivered, along
+     * with the last deltas of batched subscriptions. the following writes are written through and inform subscribers
+     * synchronously, batched subscribers are not informed of them
+     *
+     * @throws RepoAccessException if some writes failed to be written
+     */
+    synchronized void close() throws RepoAccessException {
+        WriteBehindQueue<T> queue = writeBehind;
+        SubscriberDispatcher<T> dispatcher = this.dispatcher;
+        if (snapshotter != null) snapshotter.shutdown();
+        snapshotter = null;
+        refreshAfterWriteNanos = 0;
+        if (refresher != null) refresher.shutdown();
+        refresher = null;
+        if (watcher != null) watcher.close();
+        watcher = null;
+        if (deltaFlusher != null) deltaFlusher.shutdown();
+        deltaFlusher = null;
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (JMException e) {
+                System.err.println("Failed to unregister " + mbeanName);
+            }
+            mbeanName = null;
+        }
+        writeBehind = null;
+        this.dispatcher = null;
+        // writers that still see the queue are done once they released their locks
+        for (Lock lock : locks) acquire(lock);
+        for (Lock lock : locks) lock.unlock();
+        try {
+            if (queue != null) queue.close();
+        } finally {
+            if (dispatcher != null) closeDispatcher(dispatcher);
+            for (Subscription<T> subscription : subscriptions.all()) {
+                if (!subscription.isBatched()) continue;
+                subscription.close();
+                subscription.flush();
+            }
+        }
+    }
+
+    /**
+     * inform subscribers asynchronously: a write queues its notification to every subscriber and returns without
+     * waiting for them, a delivery thread per subscriber informs it in order
+     *
+     * @param queueCapacity maximum number of notifications queued per subscriber
+     * @param backpressure  what happens to a notification of a subscriber whose queue is full
+     */
+    synchronized void enableAsyncNotifications(int queueCapacity, SubscriberDispatcher.Backpressure backpressure) {
+        if (dispatcher != null) throw new IllegalStateException("async notifications are already enabled");
+        SubscriberDispatcher<T> dispatcher = new SubscriberDispatcher<>(queueCapacity, backpressure, stats);
+        for (Subscription<T> subscription : subscriptions.all()) {
+            if (!subscription.isBatched()) dispatcher.register(subscription.subscriber);
+        }
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * wait for the notifications of the writes made so far to be delivered.
+     * returns right away if subscribers are informed synchronously
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitNotifications() throws InterruptedException {
+        SubscriberDispatcher<T> dispatcher = this.dispatcher;
+        if (dispatcher != null) dispatcher.drain();
+    }
+
+    /**
+     * @return number of notifications dropped because a subscriber's queue was full, 0 if not async
+     */
+    long droppedNotifications() {
+        SubscriberDispatcher<T> dispatcher = this.dispatcher;
+        return dispatcher == null ? 0 : dispatcher.dropped();
+    }
+
+    private static void closeDispatcher(SubscriberDispatcher<?> dispatcher) {
+        try {
+            dispatcher.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * enables a membership filter of the repo ids, so lookups of ids that are definitely not in repo return
+     * without accessing the repo. useful in LAZY and BOUNDED modes only (in EAGER mode a miss never reaches the repo)
+     *
+     * @param expectedEntries   number of entities the filter is sized for
+     * @param falsePositiveRate desired rate of absent ids that still reach the repo
+     * @throws RepoAccessException if loading the ids from repo failed
+     */
+    void enableMembershipFilter(int expectedEntries, double falsePositiveRate) throws RepoAccessException {
+        BloomFilter filter = new BloomFilter(expectedEntries, falsePositiveRate);
+        // writers are blocked while building, so no id added or removed meanwhile is missed
+        for (Lock lock : locks) acquire(lock);
+        try {
+            ArrayList<T> entities = repo.getAll();
+            if (entities == null) throw new RepoAccessException();
+            for (T entity : entities) {
+                if (entity != null) filter.add(entity.getId());
+            }
+            this.filter = filter;
+        } finally {
+            for (Lock lock : locks) lock.unlock();
+        }
+    }
+
+    /**
+     * @return the false positive rate of the membership filter: the part of lookups of absent ids that passed
+     * the filter and reached the repo. 0 if the filter is not enabled or no absent id was looked up yet
+     */
+    double filterFalsePositiveRate() {
+        long falsePositives = filterFalsePositives.sum();
+        long negatives = falsePositives + filterRejections.sum();
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+
+    /**
+     * @return the false positive rate the membership filter is expected to have for its current number of ids,
+     * 0 if the filter is not enabled
+     */
+    double filterExpectedFalsePositiveRate() {
+        BloomFilter filter = this.filter;
+        return filter == null ? 0 : filter.expectedFalsePositiveRate();
+    }
+
+    /**
+     * checks an id against the membership filter
+     *
+     * @param eId the id of the entity
+     * @return true if the entity is definitely not in repo
+     */
+    private boolean isFilteredOut(int eId) {
+        BloomFilter filter = this.filter;
+        if (filter == null || filter.mightContain(eId)) return false;
+        filterRejections.increment();
+        return true;
+    }
+
+    /**
+     * @return number of entities currently held in cache
+     */
+    int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the statistics of the cache so far: lookups, loads, repo latencies, lock waits and notifications
+     */
+    CacheStats stats() {
+        return stats.snapshot(map.size());
+    }
+
+    /**
+     * expose the statistics of the cache by an MXBean in the platform MBean server, until the cache is closed
+     *
+     * @param name name of the cache, unique among the caches registered
+     * @throws JMException if registering failed, for example if the name is taken
+     */
+    synchronized void registerMBean(String name) throws JMException {
+        if (mbeanName != null) throw new IllegalStateException("already registered as " + mbeanName);
+        ObjectName objectName = new ObjectName("Cache:type=CacheStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new CacheStatsBean(this), objectName);
+        mbeanName = objectName;
+    }
+
+    /**
+     * get the lock guarding an entity. writes to entities of different stripes run concurrently,
+     * writes to the same entity are serialized
+     *
+     * @param eId the id of the entity
+     * @return the lock of the stripe the entity belongs to
+     */
+    private Lock lockFor(int eId) {
+        return locks[stripeOf(eId)];
+    }
+
+    private static int stripeOf(int eId) {
+        int h = eId * 0x9E3779B9; // spread sequential ids over the stripes
+        return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * lock the stripes of several entities, always in ascending order so batches can't deadlock each other
+     *
+     * @param eIds the ids of the entities
+     * @return the stripes locked
+     */
+    private int[] lockAll(Collection<Integer> eIds) {
+        int[] stripes = eIds.stream().mapToInt(Cache::stripeOf).distinct().sorted().toArray();
+        for (int stripe : stripes) {
+            acquire(locks[stripe]);
+        }
+        return stripes;
+    }
+
+    /**
+     * lock an entity lock, recording the time waited for it if it's held by another thread
+     */
+    private void acquire(Lock lock) {
+        if (lock.tryLock()) {
+            stats.recordLock(0);
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        stats.recordLock(System.nanoTime() - start);
+    }
+
+    private void unlockAll(int[] stripes) {
+        for (int stripe : stripes) {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * register a subscriber to observes updates
+     *
+     * @param subscriber A subscriber to add
+     */
+    void register(Subscriber<T> subscriber) {
+        register(subscriber, Interest.all());
+    }
+
+    /**
+     * register a subscriber to observes updates of the entities it's interested in only.
+     * registering a subscriber again replaces its interest
+     *
+     * @param subscriber A subscriber to add
+     * @param interest   the entities the subscriber is informed of
+     */
+    void register(Subscriber<T> subscriber, Interest<T> interest) {
+        subscribe(new Subscription<>(subscriber, interest, false, stats));
+    }
+
+    /**
+     * register a subscriber to observes the updates of the entities it's interested in as a delta per time window:
+     * at the end of every window it's informed of the latest change of every entity modified, by a call to
+     * Subscriber.informAll per operation. registering a subscriber again replaces its interest
+     *
+     * @param subscriber A subscriber to add
+     * @param interest   the entities the subscriber is informed of
+     * @param window     time the changes are collected before they are delivered
+     * @param unit       unit of window
+     */
+    void register(Subscriber<T> subscriber, Interest<T> interest, long window, TimeUnit unit) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive: " + window);
+        Subscription<T> subscription = new Subscription<>(subscriber, interest, true, stats);
+        synchronized (this) {
+            // scheduled holding the monitor of the cache, so close can't shut down the flusher meanwhile
+            if (deltaFlusher == null) {
+                deltaFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "cache-delta");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            subscription.setFlusher(deltaFlusher.scheduleWithFixedDelay(subscription::flush, window, window, unit));
+        }
+        subscribe(subscription);
+    }
+
+    private synchronized void subscribe(Subscription<T> subscription) {
+        Subscription<T> replaced = subscriptions.add(subscription);
+        if (replaced != null) replaced.close();
+        if (dispatcher == null) return;
+        if (subscription.isBatched()) dispatcher.unregister(subscription.subscriber);
+        else dispatcher.register(subscription.subscriber);
+    }
+
+    /**
+     * Unregister a subscriber from observing updates
+     *
+     * @param subscriber A subscriber to remove
+     */
+    synchronized void unregister(Subscriber<T> subscriber) {
+        Subscription<T> subscription = subscriptions.remove(subscriber);
+        if (subscription != null) subscription.close();
+        if (dispatcher != null) dispatcher.unregister(subscriber);
+    }
+
+    /**
+     * Notify the subscribers interested for updates in cache
+     *
+     * @param operation the operation that has been occurred
+     * @param entity    the entity modified
+     */
+    private void notifyUsers(Operation operation, T entity) {
+        // I was wandering if it should be a public method from designing point of view.
+        // I decided to leave it private because of nobody should call it but the cache itself
+        SubscriberDispatcher<T> dispatcher = this.dispatcher;
+        for (Subscription<T> subscription : subscriptions.matching(entity)) {
+            if (subscription.isBatched()) subscription.buffer(operation, entity);
+            else if (dispatcher != null) dispatcher.dispatch(subscription.subscriber, operation, entity);
+            else inform(subscription.subscriber, operation, entity);
+        }
+    }
+
+    /**
+     * Notify the subscribers interested for a batch of updates in cache, every subscriber is informed of the part
+     * of the batch it's interested in
+     *
+     * @param operation the operation that has been occurred
+     * @param entities  the entities modified
+     */
+    private void notifyUsers(Operation operation, List<T> entities) {
+        Map<Subscription<T>, List<T>> parts = new LinkedHashMap<>();
+        for (T entity : entities) {
+            for (Subscription<T> subscription : subscriptions.matching(entity)) {
+                parts.computeIfAbsent(subscription, k -> new ArrayList<>()).add(entity);
+            }
+        }
+        SubscriberDispatcher<T> dispatcher = this.dispatcher;
+        for (Map.Entry<Subscription<T>, List<T>> part : parts.entrySet()) {
+            Subscription<T> subscription = part.getKey();
+            if (subscription.isBatched()) {
+                for (T entity : part.getValue()) {
+                    subscription.buffer(operation, entity);
+                }
+            } else if (dispatcher != null) {
+                dispatcher.dispatchAll(subscription.subscriber, operation, part.getValue());
+            } else {
+                inform(subscription.subscriber, operation, part.getValue());
+            }
+        }
+    }
+
+    private void inform(Subscriber<T> subscriber, Operation operation, T entity) {
+        long start = System.nanoTime();
+        try {
+            subscriber.inform(operation, entity);
+        } finally {
+            stats.recordNotification(System.nanoTime() - start);
+        }
+    }
+
+    private void inform(Subscriber<T> subscriber, Operation operation, List<T> entities) {
+        long start = System.nanoTime();
+        try {
+            subscriber.informAll(operation, entities);
+        } finally {
+            stats.recordNotification(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An entity held by a cache along with its version and the timestamps used for its expiry and refresh
+ *
+ * @param <T> An object that implements Entity
+ */
+class CacheEntry<T extends Entity> {
+    // shared by all caches, so an entry loaded again after it was evicted never gets the version it had
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    final T entity;
+    // taken on every load or write of the entity, higher than the version of any entry created before
+    final long version;
+    // System.nanoTime() of the moment the entity was loaded or written
+    final long writeTime;
+    private volatile long accessTime;
+
+    CacheEntry(T entity) {
+        this(entity, System.nanoTime());
+    }
+
+    private CacheEntry(T entity, long writeTime) {
+        this(entity, VERSIONS.incrementAndGet(), writeTime, writeTime);
+    }
+
+    /**
+     * an entry restored from a store that keeps it serialized
+     */
+    CacheEntry(T entity, long version, long writeTime, long accessTime) {
+        this.entity = entity;
+        this.version = version;
+        this.writeTime = writeTime;
+        this.accessTime = accessTime;
+    }
+
+    long getAccessTime() {
+        return accessTime;
+    }
+
+    void setAccessTime(long accessTime) {
+        this.accessTime = accessTime;
+    }
+
+    /**
+     * @param entity the entity reloaded from repo
+     * @return a new entry of the entity, keeping the version of this one if the entity didn't change (by equals)
+     */
+    CacheEntry<T> reloaded(T entity) {
+        if (!entity.equals(this.entity)) return new CacheEntry<>(entity);
+        long now = System.nanoTime();
+        return new CacheEntry<>(entity, version, now, now);
+    }
+}
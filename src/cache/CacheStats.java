@@ -0,0 +1,74 @@
+package cache;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Statistics of a cache at some point, as returned by Cache.stats. counts are since the cache was created,
+ * latencies are in nanoseconds
+ */
+final class CacheStats {
+    /**
+     * The calls made to the repo of a cache, timed separately
+     */
+    enum RepoCall {
+        GET, GET_ALL, GET_RANGE, STREAM, MARKER, CHANGES_SINCE, EXTERNAL_CHANGES, ADD, UPDATE, REMOVE, ADD_ALL,
+        UPDATE_ALL, REMOVE_ALL
+    }
+
+    final long hits;
+    final long misses;
+    // loads of entities from repo, the ones of entities that don't exist, and the ones repo failed
+    final long loads;
+    final long loadsNotFound;
+    final long loadFailures;
+    final long entryCount;
+    // acquisitions of the entity locks, and the ones that had to wait for another thread
+    final long lockAcquisitions;
+    final long lockContentions;
+    // time waited by the contended lock acquisitions
+    final LatencyHistogram.Summary lockWait;
+    // time a subscriber took to handle a notification (or a batch of them)
+    final LatencyHistogram.Summary notification;
+    final Map<RepoCall, LatencyHistogram.Summary> repoLatency;
+
+    CacheStats(long hits, long misses, long loads, long loadsNotFound, long loadFailures, long entryCount,
+               long lockAcquisitions, long lockContentions, LatencyHistogram.Summary lockWait,
+               LatencyHistogram.Summary notification,
+               Map<RepoCall, LatencyHistogram.Summary> repoLatency) {
+        this.hits = hits;
+        this.misses = misses;
+        this.loads = loads;
+        this.loadsNotFound = loadsNotFound;
+        this.loadFailures = loadFailures;
+        this.entryCount = entryCount;
+        this.lockAcquisitions = lockAcquisitions;
+        this.lockContentions = lockContentions;
+        this.lockWait = lockWait;
+        this.notification = notification;
+        this.repoLatency = Collections.unmodifiableMap(new EnumMap<>(repoLatency));
+    }
+
+    /**
+     * @return the part of the lookups that were hits, 1 if there was no lookup
+     */
+    double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("hits=%d misses=%d hitRate=%.3f loads=%d notFound=%d loadFailures=%d entries=%d%n",
+                hits, misses, hitRate(), loads, loadsNotFound, loadFailures, entryCount));
+        sb.append(String.format("locks=%d contended=%d wait: %s%n", lockAcquisitions, lockContentions, lockWait));
+        sb.append("notification: ").append(notification);
+        for (Map.Entry<RepoCall, LatencyHistogram.Summary> call : repoLatency.entrySet()) {
+            if (call.getValue().count > 0) sb.append(System.lineSeparator()).append("repo ").append(call.getKey())
+                    .append(": ").append(call.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The statistics of a cache as an MXBean, every attribute read takes a new snapshot of them
+ */
+class CacheStatsBean implements CacheStatsMXBean {
+    private final Cache<?> cache;
+
+    CacheStatsBean(Cache<?> cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.stats().hits;
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.stats().misses;
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return cache.stats().loads;
+    }
+
+    @Override
+    public long getLoadNotFoundCount() {
+        return cache.stats().loadsNotFound;
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return cache.stats().loadFailures;
+    }
+
+    @Override
+    public long getEntryCount() {
+        return cache.stats().entryCount;
+    }
+
+    @Override
+    public long getLockAcquisitionCount() {
+        return cache.stats().lockAcquisitions;
+    }
+
+    @Override
+    public long getLockContentionCount() {
+        return cache.stats().lockContentions;
+    }
+
+    @Override
+    public long getLockWaitP99() {
+        return cache.stats().lockWait.p99;
+    }
+
+    @Override
+    public double getNotificationMean() {
+        return cache.stats().notification.mean;
+    }
+
+    @Override
+    public long getNotificationP99() {
+        return cache.stats().notification.p99;
+    }
+
+    @Override
+    public Map<String, Long> getRepoCallCount() {
+        return byRepoCall(summary -> summary.count);
+    }
+
+    @Override
+    public Map<String, Double> getRepoLatencyMean() {
+        return byRepoCall(summary -> summary.mean);
+    }
+
+    @Override
+    public Map<String, Long> getRepoLatencyP99() {
+        return byRepoCall(summary -> summary.p99);
+    }
+
+    private <V> Map<String, V> byRepoCall(Function<LatencyHistogram.Summary, V> attribute) {
+        Map<String, V> values = new LinkedHashMap<>();
+        for (Map.Entry<CacheStats.RepoCall, LatencyHistogram.Summary> call : cache.stats().repoLatency.entrySet()) {
+            values.put(call.getKey().name(), attribute.apply(call.getValue()));
+        }
+        return values;
+    }
+}
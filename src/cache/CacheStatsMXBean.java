@@ -0,0 +1,47 @@
+package cache;
+
+import java.util.Map;
+
+/**
+ * Management interface of the statistics of a cache, see Cache.registerMBean. latencies are in nanoseconds
+ */
+public interface CacheStatsMXBean {
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadCount();
+
+    long getLoadNotFoundCount();
+
+    long getLoadFailureCount();
+
+    long getEntryCount();
+
+    long getLockAcquisitionCount();
+
+    long getLockContentionCount();
+
+    long getLockWaitP99();
+
+    double getNotificationMean();
+
+    long getNotificationP99();
+
+    /**
+     * @return number of calls made to repo, by operation
+     */
+    Map<String, Long> getRepoCallCount();
+
+    /**
+     * @return mean latency of the calls made to repo, by operation
+     */
+    Map<String, Double> getRepoLatencyMean();
+
+    /**
+     * @return 99th percentile latency of the calls made to repo, by operation
+     */
+    Map<String, Long> getRepoLatencyP99();
+}
@@ -0,0 +1,791 @@
+package cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Repository that demonstrate the library functionality
+ * Keeps an index from entity id to the position of its line in the file, so a lookup is one positioned read.
+ * the index is sorted by id, so a range of ids is read without scanning the file
+ */
+public class DemoRepo implements RepositoryProvider {
+    private BufferedWriter bw;
+    private String filepath;
+    private FileChannel channel;
+    // readers scan the file concurrently, writers modify the file exclusively
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Location> index = new TreeMap<>();
+    // size of the file the index describes, a different size means the file was modified by someone else
+    private volatile long indexedSize = -1;
+    // CRC32 of the content the index describes (guarded by the write lock)
+    private final CRC32 indexedCrc = new CRC32();
+    // true if the CRC wasn't kept up to date by a write made while not capturing (guarded by the write lock)
+    private boolean indexedCrcStale;
+    // changes made by someone else, recorded from the first call to externalChanges on (guarded by the write lock)
+    private boolean capturing;
+    private final Map<Integer, JSONObject> externalChanges = new LinkedHashMap<>();
+    // modified time of the file after its last capture or write by this repo, while capturing
+    // (guarded by the write lock)
+    private FileTime indexedModified;
+
+    /**
+     * Position of an entity's line in the file
+     */
+    private static final class Location {
+        long offset;
+        int length; // in bytes, not including the line separator
+        int crc; // of the line, to tell whether it changed without parsing it
+
+        Location(long offset, int length, int crc) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * A part of the file to replace: from the start of an entity's line to a given end
+     */
+    private static final class Replacement {
+        final Location location;
+        final long end; // -1 for the end of the line including its separator
+        byte[] bytes;
+
+        Replacement(Location location, long end, byte[] bytes) {
+            this.location = location;
+            this.end = end;
+            this.bytes = bytes;
+        }
+    }
+
+    DemoRepo(String filepath) {
+        this.filepath = filepath;
+        try {
+            this.bw = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(filepath, true), StandardCharsets.UTF_8));
+            this.channel = FileChannel.open(Path.of(filepath), StandardOpenOption.READ);
+            rebuildIndex(true);
+        } catch (IOException | JSONException e) {
+            System.err.println("Error loading DemoRepo");
+        }
+    }
+
+    @Override
+    public JSONObject get(Integer eId) {
+        try {
+            return find(eId);
+        } catch (RepoAccessException e) {
+            return null; // failed to provide
+        }
+    }
+
+    @Override
+    public JSONObject find(Integer eId) throws RepoAccessException {
+        try {
+            // second attempt is made with a fresh index, in case the file was modified by someone else
+            for (int attempt = 0; attempt < 2; attempt++) {
+                rebuildIndex(attempt > 0);
+                fileLock.readLock().lock();
+                try {
+                    Location location = index.get(eId);
+                    if (location == null) return null;
+                    JSONObject jsonObject = read(location);
+                    if (jsonObject != null && (int) jsonObject.get("id") == eId) return jsonObject;
+                } finally {
+                    fileLock.readLock().unlock();
+                }
+            }
+        } catch (JSONException | IOException ignored) {
+        }
+        throw new RepoAccessException();
+    }
+
+    @Override
+    public ReturnSate add(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            syncIndex();
+            int id = (int) jsonObject.get("id");
+            if (index.containsKey(id)) return ReturnSate.ALREADY_EXISTS;
+            String line = jsonObject.toString();
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            bw.write(line + "\n");
+            bw.flush();
+            index.put(id, new Location(indexedSize, bytes.length, crc(bytes, 0, bytes.length)));
+            indexedCrc.update(bytes);
+            indexedCrc.update('\n');
+            indexedSize += bytes.length + 1;
+            written();
+        } catch (JSONException | IOException c) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public ReturnSate update(JSONObject updated) {
+        fileLock.writeLock().lock();
+        try {
+            syncIndex();
+            Location location = index.get((int) updated.get("id"));
+            if (location == null)
+                return ReturnSate.NOT_EXISTS; // not exists element
+            byte[] line = updated.toString().getBytes(StandardCharsets.UTF_8);
+            replace(new ArrayList<>(List.of(new Replacement(location, location.offset + location.length, line))));
+            location.length = line.length;
+            location.crc = crc(line, 0, line.length);
+        } catch (JSONException | IOException c) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public ReturnSate remove(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            syncIndex();
+            int id = (int) jsonObject.get("id");
+            Location location = index.get(id);
+            if (location == null)
+                return ReturnSate.NOT_EXISTS; // not exists element
+            replace(new ArrayList<>(List.of(new Replacement(location, -1, new byte[0]))));
+            index.remove(id);
+        } catch (JSONException | IOException c) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public ArrayList<JSONObject> getAll(Collection<Integer> ids) {
+        try {
+            // second attempt is made with a fresh index, in case the file was modified by someone else.
+            // the index is rebuilt holding no lock, the read lock can't be upgraded to the write lock
+            for (int attempt = 0; attempt < 2; attempt++) {
+                rebuildIndex(attempt > 0);
+                fileLock.readLock().lock();
+                try {
+                    ArrayList<JSONObject> jsonObjects = readAll(ids);
+                    if (jsonObjects != null) return jsonObjects;
+                } finally {
+                    fileLock.readLock().unlock();
+                }
+            }
+        } catch (JSONException | IOException ignored) {
+        }
+        return null; // failed to provide
+    }
+
+    /**
+     * read the lines of several entities in file order, so the file is read forward once.
+     * must be called holding the file lock
+     *
+     * @return the entries that exist, null if a line doesn't match the index
+     */
+    private ArrayList<JSONObject> readAll(Collection<Integer> ids) throws IOException, JSONException {
+        ArrayList<Map.Entry<Integer, Location>> locations = new ArrayList<>();
+        for (Integer id : new HashSet<>(ids)) {
+            Location location = index.get(id);
+            if (location != null) locations.add(Map.entry(id, location));
+        }
+        locations.sort(Comparator.comparingLong(location -> location.getValue().offset));
+        ArrayList<JSONObject> jsonObjects = new ArrayList<>(locations.size());
+        for (Map.Entry<Integer, Location> location : locations) {
+            JSONObject jsonObject = read(location.getValue());
+            if (jsonObject == null || (int) jsonObject.get("id") != location.getKey()) return null;
+            jsonObjects.add(jsonObject);
+        }
+        return jsonObjects;
+    }
+
+    @Override
+    public ArrayList<ReturnSate> addAll(List<JSONObject> jsonObjects) {
+        ArrayList<ReturnSate> returnSates = new ArrayList<>(jsonObjects.size());
+        fileLock.writeLock().lock();
+        try {
+            syncIndex();
+            // all the new lines are appended by a single write
+            StringBuilder lines = new StringBuilder();
+            Map<Integer, Location> added = new HashMap<>();
+            long offset = indexedSize;
+            for (JSONObject jsonObject : jsonObjects) {
+                try {
+                    int id = (int) jsonObject.get("id");
+                    if (index.containsKey(id) || added.containsKey(id)) {
+                        returnSates.add(ReturnSate.ALREADY_EXISTS);
+                        continue;
+                    }
+                    String line = jsonObject.toString();
+                    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                    lines.append(line).append('\n');
+                    added.put(id, new Location(offset, bytes.length, crc(bytes, 0, bytes.length)));
+                    offset += bytes.length + 1;
+                    returnSates.add(ReturnSate.SUCCESS);
+                } catch (JSONException e) {
+                    returnSates.add(ReturnSate.FAILURE);
+                }
+            }
+            if (!added.isEmpty()) {
+                bw.write(lines.toString());
+                bw.flush();
+                index.putAll(added);
+                indexedCrc.update(lines.toString().getBytes(StandardCharsets.UTF_8));
+                indexedSize = offset;
+                written();
+            }
+        } catch (JSONException | IOException e) {
+            return failAll(returnSates, jsonObjects.size());
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return returnSates;
+    }
+
+    @Override
+    public ArrayList<ReturnSate> updateAll(List<JSONObject> jsonObjects) {
+        ArrayList<ReturnSate> returnSates = new ArrayList<>(jsonObjects.size());
+        fileLock.writeLock().lock();
+        try {
+            syncIndex();
+            Map<Location, Replacement> replacements = new HashMap<>();
+            for (JSONObject jsonObject : jsonObjects) {
+                try {
+                    Location location = index.get((int) jsonObject.get("id"));
+                    if (location == null) {
+                        returnSates.add(ReturnSate.NOT_EXISTS);
+                        continue;
+                    }
+                    byte[] line = jsonObject.toString().getBytes(StandardCharsets.UTF_8);
+                    // the last update of an entity in the batch wins
+                    replacements.computeIfAbsent(location,
+                            l -> new Replacement(l, l.offset + l.length, line)).bytes = line;
+                    returnSates.add(ReturnSate.SUCCESS);
+                } catch (JSONException e) {
+                    returnSates.add(ReturnSate.FAILURE);
+                }
+            }
+            if (!replacements.isEmpty()) {
+                replace(new ArrayList<>(replacements.values()));
+                for (Replacement replacement : replacements.values()) {
+                    replacement.location.length = replacement.bytes.length;
+                    replacement.location.crc = crc(replacement.bytes, 0, replacement.bytes.length);
+                }
+            }
+        } catch (JSONException | IOException e) {
+            return failAll(returnSates, jsonObjects.size());
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return returnSates;
+    }
+
+    @Override
+    public ArrayList<ReturnSate> removeAll(List<JSONObject> jsonObjects) {
+        ArrayList<ReturnSate> returnSates = new ArrayList<>(jsonObjects.size());
+        fileLock.writeLock().lock();
+        try {
+            syncIndex();
+            ArrayList<Replacement> replacements = new ArrayList<>();
+            Set<Integer> removed = new HashSet<>();
+            for (JSONObject jsonObject : jsonObjects) {
+                try {
+                    int id = (int) jsonObject.get("id");
+                    Location location = index.get(id);
+                    if (location == null || !removed.add(id)) {
+                        returnSates.add(ReturnSate.NOT_EXISTS);
+                        continue;
+                    }
+                    replacements.add(new Replacement(location, -1, new byte[0]));
+                    returnSates.add(ReturnSate.SUCCESS);
+                } catch (JSONException e) {
+                    returnSates.add(ReturnSate.FAILURE);
+                }
+            }
+            if (!replacements.isEmpty()) {
+                replace(replacements);
+                index.keySet().removeAll(removed);
+            }
+        } catch (JSONException | IOException e) {
+            return failAll(returnSates, jsonObjects.size());
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return returnSates;
+    }
+
+    /**
+     * @return states of a batch that failed to be written: every entry that was about to succeed failed
+     */
+    private static ArrayList<ReturnSate> failAll(ArrayList<ReturnSate> returnSates, int size) {
+        ArrayList<ReturnSate> failed = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ReturnSate returnSate = i < returnSates.size() ? returnSates.get(i) : ReturnSate.FAILURE;
+            failed.add(returnSate == ReturnSate.SUCCESS ? ReturnSate.FAILURE : returnSate);
+        }
+        return failed;
+    }
+
+    /**
+     * read the line of an entity. holding the file lock, it's the line of the index, otherwise the line may have
+     * moved and must be checked
+     *
+     * @param location location of the line
+     * @return the line parsed to JSON. null if it's not a valid JSON (the index doesn't match the file)
+     * @throws IOException if reading the file failed
+     */
+    private JSONObject read(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, location.offset + buffer.position()) < 0) return null;
+        }
+        try {
+            return new JSONObject(new String(buffer.array(), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * rewrite the file once replacing parts of entities' lines, and shift the locations after them.
+     * only the tail of the file from the first line replaced on is written: it's copied to a temporary file with
+     * the replacements, and copied back over the file, so a write costs the size of the tail rather than of the
+     * file. must be called holding the write lock
+     *
+     * @param replacements parts of the file to replace, of different lines
+     * @throws IOException if rewriting the file failed
+     */
+    private void replace(ArrayList<Replacement> replacements) throws IOException {
+        replacements.sort(Comparator.comparingLong(replacement -> replacement.location.offset));
+        Path path = Path.of(filepath);
+        long size = channel.size();
+        long first = replacements.get(0).location.offset;
+        long[] starts = new long[replacements.size()];
+        long[] shifts = new long[replacements.size() + 1]; // shift of the lines after the first i replacements
+        Path tailPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tail");
+        long newSize;
+        try (FileChannel tail = FileChannel.open(tailPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+             FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            long copied = first;
+            for (int i = 0; i < replacements.size(); i++) {
+                Replacement replacement = replacements.get(i);
+                long from = replacement.location.offset;
+                long to = replacement.end;
+                if (replacement.end < 0) to = endOfLine(from + replacement.location.length, size);
+                transferFully(channel, copied, from - copied, tail);
+                ByteBuffer bytes = ByteBuffer.wrap(replacement.bytes);
+                while (bytes.hasRemaining()) tail.write(bytes);
+                copied = to;
+                starts[i] = from;
+                shifts[i + 1] = shifts[i] + replacement.bytes.length - (to - from);
+            }
+            transferFully(channel, copied, size - copied, tail);
+            // the tail replaces the file from the first line replaced on
+            tail.position(0);
+            for (long position = 0; position < tail.size(); ) {
+                position += out.transferFrom(tail, first + position, tail.size() - position);
+            }
+            newSize = first + tail.size();
+            out.truncate(newSize);
+        }
+        for (Location other : index.values()) {
+            int before = Arrays.binarySearch(starts, other.offset);
+            // a replaced line keeps its offset, a line after k replacements is shifted by their deltas
+            other.offset += shifts[before >= 0 ? before : -before - 1];
+        }
+        indexedSize = newSize;
+        // the CRC of the file is needed only while capturing, otherwise it's computed once capturing starts
+        indexedCrc.reset();
+        if (capturing) RepoMarker.update(indexedCrc, channel, newSize);
+        else indexedCrcStale = true;
+        written();
+    }
+
+    /**
+     * @return the position after the line separator that follows a line ending at a position
+     */
+    private long endOfLine(long end, long size) throws IOException {
+        ByteBuffer separator = ByteBuffer.allocate((int) Math.min(2, size - end));
+        while (separator.hasRemaining()) {
+            if (channel.read(separator, end + separator.position()) < 0) break;
+        }
+        int i = 0;
+        if (i < separator.position() && separator.get(i) == '\r') i++;
+        if (i < separator.position() && separator.get(i) == '\n') i++;
+        return end + i;
+    }
+
+    /**
+     * copy a part of a file to the end of another
+     */
+    private static void transferFully(FileChannel from, long position, long count, FileChannel to) throws IOException {
+        while (count > 0) {
+            long transferred = from.transferTo(position, count, to);
+            if (transferred <= 0) throw new EOFException("Unexpected end of " + from);
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    /**
+     * build the index from the file if it's stale (the file changed size since it was built)
+     *
+     * @param force rebuild even if the file size didn't change
+     * @throws IOException   if reading the file failed
+     * @throws JSONException if a line in the file is not a valid entry
+     */
+    private void rebuildIndex(boolean force) throws IOException, JSONException {
+        if (!force && channel.size() == indexedSize) return;
+        fileLock.writeLock().lock();
+        try {
+            long size = channel.size();
+            if (!force && size == indexedSize) return; // rebuilt by another thread
+            if (!force && size > indexedSize && indexTail(size)) return; // lines appended by someone else
+            // the lines of the previous index by offset, so only the lines changed since are parsed
+            Map<Long, Map.Entry<Integer, Location>> previous = new HashMap<>();
+            for (Map.Entry<Integer, Location> entry : index.entrySet()) {
+                previous.put(entry.getValue().offset, Map.entry(entry.getKey(), entry.getValue()));
+            }
+            Map<Integer, Location> before = capturing ? new HashMap<>(index) : null;
+            index.clear();
+            indexedCrc.reset();
+            indexedCrcStale = false;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(Path.of(filepath)))) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                long offset = 0, position = 0;
+                int b;
+                while ((b = in.read()) != -1) {
+                    position++;
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    indexLine(line, offset, previous, before);
+                    indexedCrc.update('\n');
+                    line.reset();
+                    offset = position;
+                }
+                indexLine(line, offset, previous, before);
+                indexedSize = position;
+            }
+            if (before != null) {
+                for (Integer id : before.keySet()) {
+                    if (!index.containsKey(id)) recordChange(id, null);
+                }
+            }
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * index the whole lines appended after the indexed size, reading only them. must be called holding the write lock
+     *
+     * @param size current size of the file
+     * @return false if the indexed size is not the end of a line, so the file was not only appended since. while
+     * capturing, also if the content indexed changed, since the changes must be told
+     */
+    private boolean indexTail(long size) throws IOException, JSONException {
+        if (indexedSize < 0) return false;
+        if (indexedSize > 0) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (channel.read(last, indexedSize - 1) != 1 || last.get(0) != '\n') return false;
+        }
+        if (capturing && RepoMarker.crc(channel, indexedSize) != indexedCrc.getValue()) return false;
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - indexedSize));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, indexedSize + tail.position()) < 0) break;
+        }
+        byte[] bytes = tail.array();
+        int start = 0;
+        for (int i = 0; i < tail.position(); i++) {
+            if (bytes[i] != '\n') continue;
+            JSONObject jsonObject = indexLine(bytes, start, i - start, indexedSize + start, null);
+            if (jsonObject != null && capturing) recordChange((int) jsonObject.get("id"), jsonObject);
+            start = i + 1;
+        }
+        indexedCrc.update(bytes, 0, start);
+        indexedSize += start; // a line still being written is indexed once it's whole
+        return true;
+    }
+
+    /**
+     * index a line read by a full rebuild, recording its change while capturing
+     *
+     * @param before the locations of the previous index by id, null if not capturing
+     */
+    private void indexLine(ByteArrayOutputStream line, long offset, Map<Long, Map.Entry<Integer, Location>> previous,
+                           Map<Integer, Location> before) throws JSONException {
+        byte[] bytes = line.toByteArray();
+        indexedCrc.update(bytes);
+        JSONObject jsonObject = indexLine(bytes, 0, bytes.length, offset, previous);
+        if (jsonObject == null || before == null) return;
+        int id = (int) jsonObject.get("id");
+        Location was = before.get(id), now = index.get(id);
+        if (was == null || was.length != now.length || was.crc != now.crc) recordChange(id, jsonObject);
+    }
+
+    /**
+     * @param previous the lines of the previous index by offset, a line found there unchanged is not parsed
+     * @return the entry of the line, null if the line is blank or unchanged
+     */
+    private JSONObject indexLine(byte[] bytes, int from, int length, long offset,
+                                 Map<Long, Map.Entry<Integer, Location>> previous) throws JSONException {
+        if (length > 0 && bytes[from + length - 1] == '\r') length--;
+        if (length == 0) return null;
+        int crc = crc(bytes, from, length);
+        Map.Entry<Integer, Location> known = previous == null ? null : previous.get(offset);
+        if (known != null && known.getValue().length == length && known.getValue().crc == crc) {
+            index.put(known.getKey(), new Location(offset, length, crc));
+            return null;
+        }
+        JSONObject jsonObject = new JSONObject(new String(bytes, from, length, StandardCharsets.UTF_8));
+        index.put((int) jsonObject.get("id"), new Location(offset, length, crc));
+        return jsonObject;
+    }
+
+    private static int crc(byte[] bytes, int from, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, from, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * record a change made by someone else, must be called holding the write lock
+     *
+     * @param jsonObject the entry changed, null if removed
+     */
+    private void recordChange(int id, JSONObject jsonObject) {
+        externalChanges.remove(id); // so the changes are ordered by their latest line
+        externalChanges.put(id, jsonObject);
+    }
+
+    /**
+     * bring the index up to date before a write, must be called holding the write lock. while capturing, the
+     * changes made by someone else are recorded first, so the write can't hide them
+     */
+    private void syncIndex() throws IOException, JSONException {
+        if (capturing) captureChanges();
+        else rebuildIndex(false);
+    }
+
+    /**
+     * record the changes made by someone else since the previous capture. the file is known unchanged if it has
+     * the size and modified time it had after the last capture or write of this repo, so the events of its own
+     * writes cost no read. otherwise lines appended are read from the end of the index, and any other modification
+     * (even of the same size) is found by the CRC of the file and the lines changed are told by their CRCs.
+     * must be called holding the write lock
+     */
+    private void captureChanges() throws IOException, JSONException {
+        long size = channel.size();
+        FileTime modified = Files.getLastModifiedTime(Path.of(filepath));
+        if (size == indexedSize && modified.equals(indexedModified)) return;
+        if (size != indexedSize) rebuildIndex(false);
+        else if (RepoMarker.crc(channel, size) != indexedCrc.getValue()) rebuildIndex(true);
+        indexedModified = modified;
+    }
+
+    /**
+     * note the file was written by this repo, must be called holding the write lock after the write
+     */
+    private void written() throws IOException {
+        if (capturing) indexedModified = Files.getLastModifiedTime(Path.of(filepath));
+    }
+
+    @Override
+    public ArrayList<JSONObject> getAll() {
+        try (Stream<JSONObject> jsonObjects = stream()) {
+            return jsonObjects == null ? null : jsonObjects.collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * the lines are read lazily and split among the threads of a parallel stream, each parsing its own part.
+     * writers are blocked until the stream is closed, which must be done by the thread that opened it
+     */
+    @Override
+    public Stream<JSONObject> stream() {
+        Stream<String> lines;
+        fileLock.readLock().lock();
+        try {
+            lines = Files.lines(Path.of(filepath), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            fileLock.readLock().unlock();
+            return null;
+        }
+        return lines.onClose(fileLock.readLock()::unlock).filter(line -> !line.isBlank()).map(line -> {
+            try {
+                return new JSONObject(line);
+            } catch (JSONException e) {
+                throw new UncheckedIOException(new IOException("Invalid line in " + filepath, e));
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * the locations of the range are copied from the index, and their lines are read lazily holding no lock, so
+     * writers (even of the thread reading the stream) are not blocked by it. a line moved by a write made
+     * meanwhile is looked up again, an entity removed meanwhile is left out
+     */
+    @Override
+    public Stream<JSONObject> streamRange(int fromId, int toId) {
+        if (fromId > toId) return Stream.empty();
+        List<Map.Entry<Integer, Location>> range = new ArrayList<>();
+        try {
+            rebuildIndex(false);
+            fileLock.readLock().lock();
+            try {
+                for (Map.Entry<Integer, Location> entry : index.subMap(fromId, true, toId, true).entrySet()) {
+                    Location location = entry.getValue();
+                    range.add(Map.entry(entry.getKey(), new Location(location.offset, location.length, location.crc)));
+                }
+            } finally {
+                fileLock.readLock().unlock();
+            }
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+        return range.stream().map(entry -> {
+            try {
+                JSONObject jsonObject = read(entry.getValue());
+                if (jsonObject != null && jsonObject.optInt("id", -1) == entry.getKey()) return jsonObject;
+                return find(entry.getKey()); // the line moved since the range was copied
+            } catch (IOException | RepoAccessException e) {
+                throw new UncheckedIOException(new IOException("Failed to read entity " + entry.getKey(), e));
+            }
+        }).filter(Objects::nonNull);
+    }
+
+    /**
+     * {@inheritDoc}
+     * taken of the whole file, so any update or remove made since makes the changes unknown. adds only append
+     */
+    @Override
+    public String marker() {
+        fileLock.readLock().lock();
+        try {
+            return RepoMarker.of(channel).toString();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, JSONObject> changesSince(String marker) {
+        RepoMarker since = RepoMarker.parse(marker);
+        if (since == null) return null;
+        fileLock.readLock().lock();
+        try {
+            if (!since.isPrefixOf(channel)) return null;
+            // the lines after the marker were all added since
+            ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - since.size));
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, since.size + tail.position()) < 0) return null;
+            }
+            Map<Integer, JSONObject> changes = new LinkedHashMap<>();
+            for (String line : new String(tail.array(), StandardCharsets.UTF_8).split("\n")) {
+                if (line.isBlank()) continue;
+                JSONObject jsonObject = new JSONObject(line);
+                changes.put((int) jsonObject.get("id"), jsonObject);
+            }
+            return changes;
+        } catch (IOException | JSONException e) {
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * the writes of this repo keep the index up to date, so the file is known up to the end of its last write.
+     * lines appended by someone else are read from there, so only they are parsed. any other modification makes
+     * the file indexed again, parsing only the lines that changed
+     */
+    @Override
+    public Map<Integer, JSONObject> externalChanges() {
+        fileLock.writeLock().lock();
+        try {
+            capturing = true;
+            // a forced rebuild recomputes the CRC, and records the lines changed by someone else meanwhile
+            if (indexedCrcStale) rebuildIndex(true);
+            captureChanges();
+            Map<Integer, JSONObject> changes = new LinkedHashMap<>(externalChanges);
+            externalChanges.clear();
+            return changes;
+        } catch (IOException | JSONException e) {
+            return null;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * close the file, the repo can't be used after it's closed
+     *
+     * @throws IOException if closing the file failed
+     */
+    void close() throws IOException {
+        fileLock.writeLock().lock();
+        try {
+            bw.close();
+            channel.close();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    // only for testing usage
+    int getMaxId() {
+        int id, max = 0;
+        ArrayList<JSONObject> jsonObjects = getAll();
+        for (JSONObject jsonObject : jsonObjects) {
+            try {
+                id = (int) jsonObject.get("id");
+                if (id > max) max = id;
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return max;
+    }
+}
@@ -1,3 +1,5 @@
+package cache;
+
 /**
  * An entity that demonstrate the library functionality
  */
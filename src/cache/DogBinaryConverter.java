@@ -0,0 +1,56 @@
+package cache;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary converter supplied for cache to demonstrate the library functionality.
+ * A dog is written as id, name, height, weight and race. Strings are written as their length in bytes
+ * followed by their UTF-8 bytes, -1 stands for null
+ */
+public class DogBinaryConverter implements BinaryConverter<Dog> {
+
+    @Override
+    public Dog getEntity(ByteBuffer buffer) {
+        try {
+            int id = buffer.getInt();
+            String name = getString(buffer);
+            int height = buffer.getInt();
+            int weight = buffer.getInt();
+            return new Dog(id, name, height, weight, getString(buffer));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] getBytes(Dog dog) {
+        byte[] name = dog.getName() == null ? null : dog.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] race = dog.getRace() == null ? null : dog.getRace().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(5 * Integer.BYTES + length(name) + length(race));
+        buffer.putInt(dog.getId());
+        putString(buffer, name);
+        buffer.putInt(dog.getHeight());
+        buffer.putInt(dog.getWeight());
+        putString(buffer, race);
+        return buffer.array();
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
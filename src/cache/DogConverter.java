@@ -1,3 +1,5 @@
+package cache;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -1,3 +1,5 @@
+package cache;
+
 /**
  * Represents an Entity In cache
  */
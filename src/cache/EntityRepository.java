@@ -0,0 +1,201 @@
+package cache;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A repository of entities as the cache sees it, whatever the format the entities are stored in
+ *
+ * @param <T> An object that implements Entity
+ */
+public interface EntityRepository<T extends Entity> {
+    /**
+     * get an entity
+     *
+     * @param id id of the entity
+     * @return the entity. null if not exists or repo failed to provide
+     */
+    T get(int id);
+
+    /**
+     * get an entity, telling an entity that doesn't exist from a repo that failed to provide it
+     *
+     * @param id id of the entity
+     * @return the entity. null if not exists
+     * @throws RepoAccessException if repo failed to provide. by default a failure can't be told from get, and
+     *                             returns null
+     */
+    default T find(int id) throws RepoAccessException {
+        return get(id);
+    }
+
+    /**
+     * get all entities in repo
+     *
+     * @return List of all entities in the repo, null if failed to provide
+     */
+    ArrayList<T> getAll();
+
+    /**
+     * stream all entities in repo, for a bulk load that doesn't hold them all in memory at once.
+     * the stream may be parallel, and must be closed once consumed
+     *
+     * @return a stream of all entities in the repo, null if failed to provide. a failure while streaming throws an
+     * UncheckedIOException
+     */
+    default Stream<T> stream() {
+        ArrayList<T> entities = getAll();
+        return entities == null ? null : entities.stream();
+    }
+
+    /**
+     * @return a marker of the current state of repo, to catch up later with the changes made after it.
+     * null if not supported or failed to provide
+     */
+    default String marker() {
+        return null;
+    }
+
+    /**
+     * get the entities changed since a marker was taken
+     *
+     * @param marker a marker returned by marker
+     * @return the latest entity of every id added or updated since, null for an id removed since.
+     * null if the changes can't be told (the repo was rewritten since) or failed to provide
+     */
+    default Map<Integer, T> changesSince(String marker) {
+        return null;
+    }
+
+    /**
+     * get the entities changed by someone else, like another process writing the file of repo, since the previous
+     * call. the changes are recorded from the first call on
+     *
+     * @return the latest entity of every id added or updated since, null for an id removed since.
+     * null if the changes can't be told (the repo was rewritten since), not supported or failed to provide
+     */
+    default Map<Integer, T> externalChanges() {
+        return null;
+    }
+
+    /**
+     * add an entity to repo
+     *
+     * @param entity an entity to add
+     * @return SUCCESS if added successfully, ALREADY_EXISTS if already exists, FAILURE if repo failed to add
+     */
+    RepositoryProvider.ReturnSate add(T entity);
+
+    /**
+     * update an entity
+     *
+     * @param entity an entity to update
+     * @return SUCCESS if updated successfully, NOT_EXISTS if not exists, FAILURE if repo failed to update
+     */
+    RepositoryProvider.ReturnSate update(T entity);
+
+    /**
+     * remove an entity
+     *
+     * @param entity an entity to remove
+     * @return SUCCESS if removed successfully, NOT_EXISTS if not exists, FAILURE if repo failed to remove
+     */
+    RepositoryProvider.ReturnSate remove(T entity);
+
+    /**
+     * get the entities of a range of ids
+     *
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return List of the entities that exist in the range ordered by id, null if failed to provide
+     */
+    default ArrayList<T> getRange(int fromId, int toId) {
+        try (Stream<T> entities = streamRange(fromId, toId)) {
+            return entities == null ? null : entities.collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * stream the entities of a range of ids ordered by id, the stream must be closed.
+     * by default all entities are streamed and sorted
+     *
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return the entities that exist in the range, null if failed to provide
+     */
+    default Stream<T> streamRange(int fromId, int toId) {
+        Stream<T> entities = stream();
+        if (entities == null) return null;
+        return entities.filter(entity -> entity != null && entity.getId() >= fromId && entity.getId() <= toId)
+                .sorted(Comparator.comparingInt(Entity::getId));
+    }
+
+    /**
+     * get the entities of several ids
+     *
+     * @param ids ids of the entities
+     * @return List of the entities that exist, null if failed to provide
+     */
+    default ArrayList<T> getAll(Collection<Integer> ids) {
+        ArrayList<T> entities = new ArrayList<>();
+        try {
+            for (Integer id : ids) {
+                T entity = find(id);
+                if (entity != null) entities.add(entity);
+            }
+        } catch (RepoAccessException e) {
+            return null;
+        }
+        return entities;
+    }
+
+    /**
+     * add several entities to repo
+     *
+     * @param entities entities to add
+     * @return the state of every entity, in the order given. see add
+     */
+    default ArrayList<RepositoryProvider.ReturnSate> addAll(List<T> entities) {
+        ArrayList<RepositoryProvider.ReturnSate> returnSates = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            returnSates.add(add(entity));
+        }
+        return returnSates;
+    }
+
+    /**
+     * update several entities
+     *
+     * @param entities entities to update
+     * @return the state of every entity, in the order given. see update
+     */
+    default ArrayList<RepositoryProvider.ReturnSate> updateAll(List<T> entities) {
+        ArrayList<RepositoryProvider.ReturnSate> returnSates = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            returnSates.add(update(entity));
+        }
+        return returnSates;
+    }
+
+    /**
+     * remove several entities
+     *
+     * @param entities entities to remove
+     * @return the state of every entity, in the order given. see remove
+     */
+    default ArrayList<RepositoryProvider.ReturnSate> removeAll(List<T> entities) {
+        ArrayList<RepositoryProvider.ReturnSate> returnSates = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            returnSates.add(remove(entity));
+        }
+        return returnSates;
+    }
+}
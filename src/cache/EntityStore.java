@@ -0,0 +1,56 @@
+package cache;
+
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Storage used by a cache to hold its entries, keyed by entity id
+ *
+ * @param <V> type of the stored values
+ */
+interface EntityStore<V> {
+    /**
+     * get a stored value
+     *
+     * @param id id of the entity
+     * @return the value stored for the id. null if not exists
+     */
+    V get(int id);
+
+    /**
+     * store a value, replacing the previous one if exists
+     *
+     * @param id    id of the entity
+     * @param value a value to store
+     */
+    void put(int id, V value);
+
+    /**
+     * remove a stored value
+     *
+     * @param id id of the entity
+     * @return the value removed. null if not exists
+     */
+    V remove(int id);
+
+    /**
+     * @return number of values currently stored
+     */
+    int size();
+
+    /**
+     * perform an action on every stored value. values put or removed meanwhile may be seen or not
+     *
+     * @param action the action to perform
+     */
+    void forEach(Consumer<? super V> action);
+
+    /**
+     * set a listener of the ids of the values the store evicts by itself, called by the thread that caused the
+     * eviction while it's made. a store that never evicts ignores it
+     *
+     * @param listener called with the id of every value evicted
+     */
+    default void setEvictionListener(IntConsumer listener) {
+    }
+}
@@ -0,0 +1,101 @@
+package cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * Store keeping the secondary indexes of a cache current: every entry put or removed is indexed or unindexed
+ * in all of them. the entries are held by the store it wraps, and the entries a bounded store evicts are unindexed
+ * as they are evicted. an entry evicted while it's put again may stay indexed, the cache checks the entries it
+ * finds by an index.
+ * Optionally keeps the ids stored sorted too, for range scans of a store that is never evicted
+ *
+ * @param <T> An object that implements Entity
+ */
+class IndexedStore<T extends Entity> implements EntityStore<CacheEntry<T>> {
+    private final EntityStore<CacheEntry<T>> store;
+    private final Map<String, SecondaryIndex<T>> indexes = new ConcurrentHashMap<>();
+    // null if not kept
+    private final ConcurrentSkipListSet<Integer> ids;
+
+    /**
+     * @param store     the store to hold the entries
+     * @param sortedIds true to keep the ids stored sorted
+     */
+    IndexedStore(EntityStore<CacheEntry<T>> store, boolean sortedIds) {
+        this.store = store;
+        this.ids = sortedIds ? new ConcurrentSkipListSet<>() : null;
+        store.setEvictionListener(this::unindex);
+    }
+
+    @Override
+    public CacheEntry<T> get(int id) {
+        return store.get(id);
+    }
+
+    @Override
+    public void put(int id, CacheEntry<T> value) {
+        store.put(id, value);
+        if (ids != null) ids.add(id);
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.put(value.entity);
+        }
+    }
+
+    @Override
+    public CacheEntry<T> remove(int id) {
+        CacheEntry<T> removed = store.remove(id);
+        unindex(id);
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public void forEach(Consumer<? super CacheEntry<T>> action) {
+        store.forEach(action);
+    }
+
+    /**
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return a live view of the ids stored in the range, ascending. null if the ids are not kept sorted
+     */
+    NavigableSet<Integer> idsBetween(int fromId, int toId) {
+        if (ids == null) return null;
+        return fromId > toId ? Collections.emptyNavigableSet() : ids.subSet(fromId, true, toId, true);
+    }
+
+    /**
+     * add an index of the entries stored, must be called while the store is not written
+     *
+     * @param name  name of the index
+     * @param index an empty index
+     */
+    void addIndex(String name, SecondaryIndex<T> index) {
+        if (indexes.containsKey(name)) throw new IllegalArgumentException("index " + name + " already exists");
+        store.forEach(entry -> index.put(entry.entity));
+        indexes.put(name, index);
+    }
+
+    /**
+     * @return the index of a name, null if not exists
+     */
+    SecondaryIndex<T> getIndex(String name) {
+        return indexes.get(name);
+    }
+
+    private void unindex(int id) {
+        if (ids != null) ids.remove(id);
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.remove(id);
+        }
+    }
+}
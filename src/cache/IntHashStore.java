@@ -0,0 +1,165 @@
+package cache;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+
+/**
+ * Unbounded thread safe store keyed by primitive ids, so neither a lookup nor a stored entry needs an Integer or
+ * a map node. Open addressing hash tables in segments: gets are lock free, puts and removes lock their segment.
+ * A removed entry leaves a tombstone behind until its table is rebuilt, so entries never move while read
+ *
+ * @param <V> type of the stored values
+ */
+class IntHashStore<V> implements EntityStore<V> {
+    private static final int SEGMENTS = 16; // a power of two
+    private static final int INITIAL_CAPACITY = 16; // per segment, a power of two
+    private static final Object TOMBSTONE = new Object();
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    IntHashStore() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+        int hash = hash(id);
+        return (V) segments[hash >>> 28].get(id, hash);
+    }
+
+    @Override
+    public void put(int id, V value) {
+        if (value == null) throw new NullPointerException("null value of " + id);
+        int hash = hash(id);
+        segments[hash >>> 28].put(id, hash, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(int id) {
+        int hash = hash(id);
+        return (V) segments[hash >>> 28].remove(id, hash);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        for (Segment segment : segments) {
+            Table table = segment.table;
+            for (int i = 0; i < table.values.length; i++) {
+                Object value = VALUES.getAcquire(table.values, i);
+                if (value != null && value != TOMBSTONE) action.accept((V) value);
+            }
+        }
+    }
+
+    static int hash(int id) {
+        int h = id * 0x9E3779B9; // spread sequential ids, the high bits pick the segment
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A table of ids and values. a slot is free while its value is null, once set its id never changes
+     */
+    private static final class Table {
+        final int[] ids;
+        final Object[] values;
+
+        Table(int capacity) {
+            ids = new int[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment {
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+        private volatile int size; // live entries
+        private int used; // slots taken by entries or tombstones, guarded by this
+
+        Object get(int id, int hash) {
+            Table table = this.table;
+            int mask = table.ids.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                // the value is set after the id, reading it first makes the id visible
+                Object value = VALUES.getAcquire(table.values, i);
+                if (value == null) return null;
+                if (table.ids[i] == id) return value == TOMBSTONE ? null : value;
+            }
+        }
+
+        synchronized void put(int id, int hash, Object value) {
+            Table table = this.table;
+            int i = slot(table, id, hash);
+            Object old = table.values[i];
+            if (old == null) {
+                if ((used + 1) * 4 > table.ids.length * 3) { // too full, rebuild and look again
+                    table = rebuild(size + 1);
+                    i = slot(table, id, hash);
+                }
+                used++;
+                table.ids[i] = id;
+            }
+            if (old == null || old == TOMBSTONE) size++;
+            VALUES.setRelease(table.values, i, value);
+        }
+
+        synchronized Object remove(int id, int hash) {
+            Table table = this.table;
+            int i = slot(table, id, hash);
+            Object old = table.values[i];
+            if (old == null || old == TOMBSTONE) return null;
+            VALUES.setRelease(table.values, i, TOMBSTONE);
+            size--;
+            return old;
+        }
+
+        /**
+         * @return the slot of an id, or the free slot it would take
+         */
+        private int slot(Table table, int id, int hash) {
+            int mask = table.ids.length - 1;
+            int i = hash & mask;
+            while (table.values[i] != null && table.ids[i] != id) i = (i + 1) & mask;
+            return i;
+        }
+
+        /**
+         * copy the live entries to a new table sized for them, dropping the tombstones
+         *
+         * @param entries number of entries the table should fit
+         * @return the new table, already published to readers
+         */
+        private Table rebuild(int entries) {
+            int capacity = INITIAL_CAPACITY;
+            while (entries * 2 > capacity) capacity <<= 1; // at most half full after the rebuild
+            Table old = this.table;
+            Table rebuilt = new Table(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < old.ids.length; i++) {
+                Object value = old.values[i];
+                if (value == null || value == TOMBSTONE) continue;
+                int j = hash(old.ids[i]) & mask;
+                while (rebuilt.values[j] != null) j = (j + 1) & mask;
+                rebuilt.ids[j] = old.ids[i];
+                rebuilt.values[j] = value;
+            }
+            used = size;
+            this.table = rebuilt; // volatile write publishes the whole table
+            return rebuilt;
+        }
+    }
+}
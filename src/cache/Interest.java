@@ -0,0 +1,95 @@
+package cache;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * The entities a subscriber is interested in, so it's informed only of changes to them.
+ * A predicate is evaluated on the entity written (for a remove, the entity given to remove)
+ *
+ * @param <T> An object that implements Entity
+ */
+public final class Interest<T extends Entity> {
+    /**
+     * Kind of an interest, the cache indexes the interests by their kind
+     */
+    enum Kind {
+        ALL, IDS, RANGE, PREDICATE
+    }
+
+    private final Kind kind;
+    private final int[] ids; // sorted, of IDS
+    private final int from; // inclusive, of RANGE
+    private final int to; // inclusive, of RANGE
+    private final Predicate<? super T> predicate; // of PREDICATE
+
+    private Interest(Kind kind, int[] ids, int from, int to, Predicate<? super T> predicate) {
+        this.kind = kind;
+        this.ids = ids;
+        this.from = from;
+        this.to = to;
+        this.predicate = predicate;
+    }
+
+    /**
+     * @return interest in every entity
+     */
+    public static <T extends Entity> Interest<T> all() {
+        return new Interest<>(Kind.ALL, null, 0, 0, null);
+    }
+
+    /**
+     * @param ids ids of the entities
+     * @return interest in the entities of the given ids
+     */
+    public static <T extends Entity> Interest<T> ids(int... ids) {
+        int[] sorted = Arrays.stream(ids).distinct().sorted().toArray();
+        return new Interest<>(Kind.IDS, sorted, 0, 0, null);
+    }
+
+    /**
+     * @param from lowest id, inclusive
+     * @param to   highest id, inclusive
+     * @return interest in the entities whose ids are in the range
+     */
+    public static <T extends Entity> Interest<T> range(int from, int to) {
+        if (from > to) throw new IllegalArgumentException("Empty range: " + from + ".." + to);
+        return new Interest<>(Kind.RANGE, null, from, to, null);
+    }
+
+    /**
+     * @param predicate a predicate of the entities
+     * @return interest in the entities that match the predicate
+     */
+    public static <T extends Entity> Interest<T> matching(Predicate<? super T> predicate) {
+        return new Interest<>(Kind.PREDICATE, null, 0, 0, predicate);
+    }
+
+    /**
+     * @param entity an entity modified
+     * @return true if the entity is of interest
+     */
+    boolean matches(T entity) {
+        switch (kind) {
+            case IDS:
+                return Arrays.binarySearch(ids, entity.getId()) >= 0;
+            case RANGE:
+                return entity.getId() >= from && entity.getId() <= to;
+            case PREDICATE:
+                return predicate.test(entity);
+            default:
+                return true;
+        }
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the ids of an IDS interest
+     */
+    int[] getIds() {
+        return ids;
+    }
+}
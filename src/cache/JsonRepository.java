@@ -0,0 +1,135 @@
+package cache;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Entity repository on top of a JSON repository provider, converting entities with a converter
+ *
+ * @param <T> An object that implements Entity
+ */
+class JsonRepository<T extends Entity> implements EntityRepository<T> {
+    private final RepositoryProvider repo;
+    private final Converter<T> converter;
+
+    JsonRepository(RepositoryProvider repo, Converter<T> converter) {
+        this.repo = repo;
+        this.converter = converter;
+    }
+
+    @Override
+    public T get(int id) {
+        JSONObject jsonObject = repo.get(id);
+        return jsonObject == null ? null : converter.getEntity(jsonObject);
+    }
+
+    @Override
+    public T find(int id) throws RepoAccessException {
+        JSONObject jsonObject = repo.find(id);
+        return jsonObject == null ? null : converter.getEntity(jsonObject);
+    }
+
+    @Override
+    public ArrayList<T> getAll() {
+        return toEntities(repo.getAll());
+    }
+
+    @Override
+    public Stream<T> stream() {
+        Stream<JSONObject> jsonObjects = repo.stream();
+        return jsonObjects == null ? null : jsonObjects.map(converter::getEntity);
+    }
+
+    @Override
+    public String marker() {
+        return repo.marker();
+    }
+
+    @Override
+    public Map<Integer, T> changesSince(String marker) {
+        return toEntities(repo.changesSince(marker));
+    }
+
+    @Override
+    public Map<Integer, T> externalChanges() {
+        return toEntities(repo.externalChanges());
+    }
+
+    private Map<Integer, T> toEntities(Map<Integer, JSONObject> changes) {
+        if (changes == null) return null;
+        Map<Integer, T> entities = new LinkedHashMap<>();
+        for (Map.Entry<Integer, JSONObject> change : changes.entrySet()) {
+            entities.put(change.getKey(), change.getValue() == null ? null : converter.getEntity(change.getValue()));
+        }
+        return entities;
+    }
+
+    @Override
+    public ArrayList<T> getRange(int fromId, int toId) {
+        return toEntities(repo.getRange(fromId, toId));
+    }
+
+    @Override
+    public Stream<T> streamRange(int fromId, int toId) {
+        Stream<JSONObject> jsonObjects = repo.streamRange(fromId, toId);
+        return jsonObjects == null ? null : jsonObjects.map(converter::getEntity);
+    }
+
+    @Override
+    public ArrayList<T> getAll(Collection<Integer> ids) {
+        return toEntities(repo.getAll(ids));
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate add(T entity) {
+        return repo.add(converter.getJson(entity));
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate update(T entity) {
+        return repo.update(converter.getJson(entity));
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate remove(T entity) {
+        return repo.remove(converter.getJson(entity));
+    }
+
+    @Override
+    public ArrayList<RepositoryProvider.ReturnSate> addAll(List<T> entities) {
+        return repo.addAll(toJson(entities));
+    }
+
+    @Override
+    public ArrayList<RepositoryProvider.ReturnSate> updateAll(List<T> entities) {
+        return repo.updateAll(toJson(entities));
+    }
+
+    @Override
+    public ArrayList<RepositoryProvider.ReturnSate> removeAll(List<T> entities) {
+        return repo.removeAll(toJson(entities));
+    }
+
+    private ArrayList<T> toEntities(ArrayList<JSONObject> jsonObjects) {
+        if (jsonObjects == null) return null;
+        ArrayList<T> entities = new ArrayList<>(jsonObjects.size());
+        for (JSONObject jsonObject : jsonObjects) {
+            entities.add(converter.getEntity(jsonObject));
+        }
+        return entities;
+    }
+
+    private ArrayList<JSONObject> toJson(List<T> entities) {
+        ArrayList<JSONObject> jsonObjects = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            jsonObjects.add(converter.getJson(entity));
+        }
+        return jsonObjects;
+    }
+}
@@ -0,0 +1,120 @@
+package cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock free histogram of latencies in nanoseconds, with buckets of a fixed relative precision like an HDR
+ * histogram: every power of two is split into 16 linear buckets, so a recorded value is off by at most 1/16 of
+ * it whatever its magnitude. Recording takes a bucket lookup and an atomic increment in one of several stripes,
+ * so concurrent recorders rarely touch the same counter. A stripe (about 8KB) is allocated by its first record,
+ * so a histogram never recorded to costs nothing but its array of stripes, and one recorded by a single thread a
+ * single stripe
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+    // per stripe: a count per bucket, then the sum and the maximum of the values
+    private static final int SUM = BUCKETS;
+    private static final int MAX = BUCKETS + 1;
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * @param nanos a latency to record, negative ones are recorded as 0
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 2));
+            stripe = stripes.get(index); // allocated by this thread or a concurrent one
+        }
+        stripe.incrementAndGet(bucketOf(value));
+        stripe.addAndGet(SUM, value);
+        long max = stripe.get(MAX);
+        while (value > max && !stripe.compareAndSet(MAX, max, value)) max = stripe.get(MAX);
+    }
+
+    /**
+     * @return the values recorded so far. values recorded meanwhile may be partly counted
+     */
+    Summary summary() {
+        long[] counts = new long[BUCKETS];
+        long count = 0, sum = 0, max = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) continue;
+            for (int i = 0; i < BUCKETS; i++) {
+                long bucket = stripe.get(i);
+                counts[i] += bucket;
+                count += bucket;
+            }
+            sum += stripe.get(SUM);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new Summary(count, count == 0 ? 0 : (double) sum / count, percentile(counts, count, max, 0.5),
+                percentile(counts, count, max, 0.9), percentile(counts, count, max, 0.99),
+                percentile(counts, count, max, 0.999), max);
+    }
+
+    /**
+     * @return the highest value of the bucket holding the given percentile (at most the maximum recorded),
+     * 0 if nothing recorded
+     */
+    private static long percentile(long[] counts, long count, long max, double percentile) {
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) return Math.min(max, highestOf(i));
+        }
+        return 0;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (1L << exponent) | ((long) (bucket & (SUB_BUCKETS - 1)) << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * The values recorded by a histogram at some point, in nanoseconds
+     */
+    static final class Summary {
+        final long count;
+        final double mean;
+        final long p50;
+        final long p90;
+        final long p99;
+        final long p999;
+        final long max;
+
+        Summary(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+                    count, mean, p50, p90, p99, p999, max);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package cache;
+
+import org.json.JSONException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Compacts the file of a log structured repository: rewrites it with the records of the live entities only.
+ * A compaction needed by a write runs in the background, so the write isn't blocked by rewriting the file.
+ * The records before the size of a snapshot of the index never change, so they are copied without holding the
+ * lock of the repository. writers are blocked only while catching up with the records appended during the copy,
+ * readers only while the new file replaces the old one. the compactions of all the repositories share a single
+ * daemon thread
+ */
+class LogCompactor {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "log-repo-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Path path;
+    private final ReadWriteLock fileLock;
+    private final Log log;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    /**
+     * The file of a repository and its index, read holding the lock of the repository
+     */
+    interface Log {
+        FileChannel channel();
+
+        /**
+         * @return location of the latest record of every live entity
+         */
+        Map<Integer, LogLocation> index();
+
+        long size();
+
+        /**
+         * apply the records of a file to an index, from a position to its end
+         *
+         * @return the end of the last whole record
+         * @throws IOException   if reading the file failed
+         * @throws JSONException if a record is not a valid entry
+         */
+        long replay(FileChannel file, long position, Map<Integer, LogLocation> index) throws IOException, JSONException;
+
+        /**
+         * open the compacted file, once it replaced the file of the repository. called holding the write lock
+         *
+         * @param index   location of the latest record of every live entity in the compacted file
+         * @param size    size of the compacted file
+         * @param garbage bytes of the compacted file that are not of a live entity
+         * @throws IOException if opening the file failed
+         */
+        void reopen(Map<Integer, LogLocation> index, long size, long garbage) throws IOException;
+    }
+
+    /**
+     * @param name     name of the repository, for the error logged if a compaction fails
+     * @param path     file of the repository
+     * @param fileLock lock of the file, its write lock is held by writers
+     * @param log      the file and index of the repository
+     */
+    LogCompactor(String name, Path path, ReadWriteLock fileLock, Log log) {
+        this.name = name;
+        this.path = path;
+        this.fileLock = fileLock;
+        this.log = log;
+    }
+
+    /**
+     * schedule a compaction on the background thread, unless one is scheduled or running already
+     */
+    void schedule() {
+        if (!compacting.compareAndSet(false, true)) return;
+        EXECUTOR.execute(() -> {
+            try {
+                compact();
+            } catch (IOException | JSONException e) {
+                System.err.println("Error compacting " + name);
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    /**
+     * rewrite the file with the live entities only
+     *
+     * @throws IOException   if rewriting the file failed
+     * @throws JSONException if a record appended during the copy is not a valid entry
+     */
+    synchronized void compact() throws IOException, JSONException {
+        FileChannel channel;
+        Map<Integer, LogLocation> snapshot;
+        long snapshotSize;
+        fileLock.readLock().lock();
+        try {
+            channel = log.channel(); // replaced only by a compaction
+            snapshot = new HashMap<>(log.index());
+            snapshotSize = log.size();
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Map<Integer, LogLocation> newIndex = new HashMap<>();
+            long position = 0;
+            for (Map.Entry<Integer, LogLocation> entry : snapshot.entrySet()) {
+                LogLocation location = entry.getValue();
+                ByteBuffer record = ByteBuffer.allocate(location.length);
+                readFully(channel, record, location.offset);
+                writeFully(out, record.flip(), position);
+                newIndex.put(entry.getKey(), new LogLocation(position, location.length));
+                position += location.length;
+            }
+            fileLock.writeLock().lock();
+            try {
+                // catch up with the records appended meanwhile
+                ByteBuffer tail = ByteBuffer.allocate((int) (log.size() - snapshotSize));
+                readFully(channel, tail, snapshotSize);
+                writeFully(out, tail.flip(), position);
+                out.force(true);
+                long newSize = log.replay(out, position, newIndex);
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.reopen(newIndex, newSize, newSize - liveSize(newIndex));
+            } finally {
+                fileLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return bytes of the records of the live entities
+     */
+    static long liveSize(Map<Integer, LogLocation> index) {
+        long live = 0;
+        for (LogLocation location : index.values()) {
+            live += location.length;
+        }
+        return live;
+    }
+
+    static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) throw new EOFException("Unexpected end of log");
+        }
+    }
+
+    static void writeFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += file.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package cache;
+
+/**
+ * Position of a record in the file of a log structured repository
+ */
+final class LogLocation {
+    final long offset;
+    final int length; // in bytes, of the whole record (including its line separator or header)
+
+    LogLocation(long offset, int length) {
+        this.offset = offset;
+        this.length = length;
+    }
+}
@@ -0,0 +1,324 @@
+package cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Log structured repository: every add, update and remove appends a line to the end of the file and never
+ * rewrites it. An update appends the new version of the entity, a remove appends a tombstone.
+ * Superseded versions and tombstones are garbage, once they pass a part of the file a background compaction
+ * rewrites the file with the live entities only.
+ */
+public class LogRepo implements RepositoryProvider {
+    private static final String TOMBSTONE = "__removed";
+    private static final double DEFAULT_GARBAGE_RATIO = 0.5;
+    // files smaller than this are not worth compacting
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final double garbageRatio;
+    private FileChannel channel;
+    // readers access the file concurrently, writers append exclusively
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    // location of the latest version of every live entity
+    private Map<Integer, LogLocation> index = new HashMap<>();
+    private long size;
+    private long garbage;
+    private final LogCompactor compactor;
+
+    LogRepo(String filepath) {
+        this(filepath, DEFAULT_GARBAGE_RATIO);
+    }
+
+    /**
+     * @param filepath     file of the log, created if not exists
+     * @param garbageRatio part of the file that may be garbage before it's compacted
+     */
+    LogRepo(String filepath, double garbageRatio) {
+        this.path = Path.of(filepath);
+        this.garbageRatio = garbageRatio;
+        this.compactor = new LogCompactor("LogRepo", path, fileLock, new LogCompactor.Log() {
+            @Override
+            public FileChannel channel() {
+                return channel;
+            }
+
+            @Override
+            public Map<Integer, LogLocation> index() {
+                return index;
+            }
+
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public long replay(FileChannel file, long position, Map<Integer, LogLocation> index)
+                    throws IOException, JSONException {
+                return LogRepo.replay(file, position, index);
+            }
+
+            @Override
+            public void reopen(Map<Integer, LogLocation> index, long size, long garbage) throws IOException {
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                LogRepo.this.index = index;
+                LogRepo.this.size = size;
+                LogRepo.this.garbage = garbage;
+            }
+        });
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.size = replay(channel, 0, index);
+            this.garbage = size - LogCompactor.liveSize(index);
+            channel.truncate(size); // drop a line partly written before a crash
+        } catch (IOException | JSONException e) {
+            System.err.println("Error loading LogRepo");
+        }
+    }
+
+    @Override
+    public JSONObject get(Integer id) {
+        try {
+            return find(id);
+        } catch (RepoAccessException e) {
+            return null; // failed to provide
+        }
+    }
+
+    @Override
+    public JSONObject find(Integer id) throws RepoAccessException {
+        fileLock.readLock().lock();
+        try {
+            LogLocation location = index.get(id);
+            if (location == null) return null;
+            return new JSONObject(read(channel, location));
+        } catch (JSONException | IOException e) {
+            throw new RepoAccessException();
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ArrayList<JSONObject> getAll() {
+        ArrayList<JSONObject> jsonObjects = new ArrayList<>();
+        fileLock.readLock().lock();
+        try {
+            for (LogLocation location : index.values()) {
+                jsonObjects.add(new JSONObject(read(channel, location)));
+            }
+        } catch (JSONException | IOException e) {
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        return jsonObjects;
+    }
+
+    /**
+     * {@inheritDoc}
+     * the lines of the live entities are read and parsed lazily, in file order so the file is read forward.
+     * writers are blocked until the stream is closed, which must be done by the thread that opened it
+     */
+    @Override
+    public Stream<JSONObject> stream() {
+        fileLock.readLock().lock();
+        List<LogLocation> locations = new ArrayList<>(index.values());
+        locations.sort(Comparator.comparingLong(location -> location.offset));
+        return locations.stream().onClose(fileLock.readLock()::unlock).map(location -> {
+            try {
+                return new JSONObject(read(channel, location));
+            } catch (IOException | JSONException e) {
+                throw new UncheckedIOException(new IOException("Invalid line in log", e));
+            }
+        });
+    }
+
+    @Override
+    public ReturnSate add(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            int id = (int) jsonObject.get("id");
+            if (index.containsKey(id)) return ReturnSate.ALREADY_EXISTS;
+            index.put(id, append(jsonObject.toString()));
+        } catch (JSONException | IOException e) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public ReturnSate update(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            int id = (int) jsonObject.get("id");
+            LogLocation old = index.get(id);
+            if (old == null) return ReturnSate.NOT_EXISTS;
+            index.put(id, append(jsonObject.toString()));
+            garbage += old.length;
+        } catch (JSONException | IOException e) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        compactIfNeeded();
+        return ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public ReturnSate remove(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            int id = (int) jsonObject.get("id");
+            LogLocation old = index.get(id);
+            if (old == null) return ReturnSate.NOT_EXISTS;
+            JSONObject tombstone = new JSONObject();
+            tombstone.put("id", id);
+            tombstone.put(TOMBSTONE, true);
+            garbage += old.length + append(tombstone.toString()).length;
+            index.remove(id);
+        } catch (JSONException | IOException e) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        compactIfNeeded();
+        return ReturnSate.SUCCESS;
+    }
+
+    /**
+     * {@inheritDoc}
+     * a compaction rewrites the file, so the changes made before it are unknown to the markers taken before it
+     */
+    @Override
+    public String marker() {
+        fileLock.readLock().lock();
+        try {
+            return new RepoMarker(size, RepoMarker.crc(channel, size)).toString();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, JSONObject> changesSince(String marker) {
+        RepoMarker since = RepoMarker.parse(marker);
+        if (since == null) return null;
+        fileLock.readLock().lock();
+        try {
+            if (since.size > size || RepoMarker.crc(channel, since.size) != since.crc) return null;
+            ByteBuffer tail = ByteBuffer.allocate((int) (size - since.size));
+            LogCompactor.readFully(channel, tail, since.size);
+            Map<Integer, JSONObject> changes = new LinkedHashMap<>();
+            for (String line : new String(tail.array(), StandardCharsets.UTF_8).split("\n")) {
+                if (line.isEmpty()) continue;
+                JSONObject jsonObject = new JSONObject(line);
+                int id = (int) jsonObject.get("id");
+                changes.remove(id); // so the changes are ordered by their latest line
+                changes.put(id, jsonObject.has(TOMBSTONE) ? null : jsonObject);
+            }
+            return changes;
+        } catch (IOException | JSONException e) {
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * rewrite the file with the live entities only, see LogCompactor
+     *
+     * @throws IOException   if rewriting the file failed
+     * @throws JSONException if a line in the file is not a valid entry
+     */
+    void compact() throws IOException, JSONException {
+        compactor.compact();
+    }
+
+    /**
+     * schedule a background compaction if the garbage passed its threshold and none is running
+     */
+    private void compactIfNeeded() {
+        fileLock.readLock().lock();
+        try {
+            if (size < MIN_COMPACTION_SIZE || garbage < size * garbageRatio) return;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        compactor.schedule();
+    }
+
+    /**
+     * append a line to the end of the file, must be called holding the write lock
+     *
+     * @param line a line to append
+     * @return the location of the line appended
+     * @throws IOException if writing the file failed
+     */
+    private LogLocation append(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        LogCompactor.writeFully(channel, ByteBuffer.wrap(bytes), size);
+        LogLocation location = new LogLocation(size, bytes.length);
+        size += bytes.length;
+        return location;
+    }
+
+    /**
+     * apply the lines of a log to an index, from a position to its end
+     *
+     * @param log      the log to read
+     * @param position position of the first line to apply
+     * @param index    index to apply the lines to
+     * @return size of the log
+     * @throws IOException   if reading the log failed
+     * @throws JSONException if a line in the log is not a valid entry
+     */
+    private static long replay(FileChannel log, long position, Map<Integer, LogLocation> index)
+            throws IOException, JSONException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (log.size() - position));
+        LogCompactor.readFully(log, buffer, position);
+        byte[] bytes = buffer.array();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            if (i > start) {
+                JSONObject jsonObject = new JSONObject(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                int id = (int) jsonObject.get("id");
+                if (jsonObject.has(TOMBSTONE)) index.remove(id);
+                else index.put(id, new LogLocation(position + start, i + 1 - start));
+            }
+            start = i + 1;
+        }
+        return position + start; // a partly written last line is ignored, it will be overwritten
+    }
+
+    private static String read(FileChannel channel, LogLocation location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length - 1); // without the line separator
+        LogCompactor.readFully(channel, buffer, location.offset);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+}
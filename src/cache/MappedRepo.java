@@ -0,0 +1,354 @@
+package cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Repository of the same file format as DemoRepo (a JSON line per entity), accessed through a memory mapping
+ * of the file. Reads and writes are memory accesses to the page cache rather than system calls.
+ * The mapping grows ahead of the data, the file is truncated to its data on close. A file left bigger by a
+ * crash is padded with zeros, which are ignored when it's opened again.
+ */
+public class MappedRepo implements RepositoryProvider {
+    // a single mapping is limited to 2GB, bigger files are mapped in segments
+    private static final int SEGMENT_SIZE = 1 << 30;
+    private static final int MIN_CAPACITY = 4096;
+    private static final int MOVE_CHUNK = 64 * 1024;
+
+    private FileChannel channel;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long capacity; // bytes mapped
+    private long size; // bytes of data
+    // readers access the mapping concurrently, writers modify it exclusively
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private final Map<Integer, Location> index = new HashMap<>();
+
+    /**
+     * Position of an entity's line in the file
+     */
+    private static final class Location {
+        long offset;
+        int length; // in bytes, not including the line separator
+
+        Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    MappedRepo(String filepath) {
+        try {
+            this.channel = FileChannel.open(Path.of(filepath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long fileSize = channel.size();
+            remap(Math.max(fileSize, MIN_CAPACITY));
+            long position = 0;
+            while (position < fileSize && byteAt(position) != 0) {
+                long end = lineEnd(position, fileSize);
+                int length = lineLength(position, end);
+                if (length > 0) {
+                    JSONObject jsonObject = new JSONObject(new String(read(position, length), StandardCharsets.UTF_8));
+                    index.put((int) jsonObject.get("id"), new Location(position, length));
+                }
+                if (end == fileSize || byteAt(end) == 0) { // last line has no separator
+                    position = end;
+                    break;
+                }
+                position = end + 1;
+            }
+            this.size = position;
+            if (size > 0 && byteAt(size - 1) != '\n') { // so every line ends with a separator
+                write(size, new byte[]{'\n'});
+                size++;
+            }
+        } catch (IOException | JSONException e) {
+            System.err.println("Error loading MappedRepo");
+        }
+    }
+
+    @Override
+    public JSONObject get(Integer id) {
+        try {
+            return find(id);
+        } catch (RepoAccessException e) {
+            return null; // failed to provide
+        }
+    }
+
+    @Override
+    public JSONObject find(Integer id) throws RepoAccessException {
+        fileLock.readLock().lock();
+        try {
+            Location location = index.get(id);
+            if (location == null) return null;
+            return new JSONObject(new String(read(location.offset, location.length), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new RepoAccessException();
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ArrayList<JSONObject> getAll() {
+        try (Stream<JSONObject> jsonObjects = stream()) {
+            return jsonObjects.collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * the lines are parsed lazily straight from the mapping, in file order so the pages are read sequentially.
+     * writers are blocked until the stream is closed, which must be done by the thread that opened it
+     */
+    @Override
+    public Stream<JSONObject> stream() {
+        fileLock.readLock().lock();
+        Iterator<byte[]> lines = new Iterator<>() {
+            private long position = skipBlank(0);
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                long end = lineEnd(position, size);
+                byte[] line = read(position, lineLength(position, end));
+                position = skipBlank(end + 1);
+                return line;
+            }
+        };
+        Spliterator<byte[]> spliterator =
+                Spliterators.spliteratorUnknownSize(lines, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(fileLock.readLock()::unlock).map(line -> {
+            try {
+                return new JSONObject(new String(line, StandardCharsets.UTF_8));
+            } catch (JSONException e) {
+                throw new UncheckedIOException(new IOException("Invalid line in mapped file", e));
+            }
+        });
+    }
+
+    @Override
+    public ReturnSate add(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            int id = (int) jsonObject.get("id");
+            if (index.containsKey(id)) return ReturnSate.ALREADY_EXISTS;
+            byte[] line = (jsonObject.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(size + line.length);
+            write(size, line);
+            index.put(id, new Location(size, line.length - 1));
+            size += line.length;
+        } catch (JSONException | IOException e) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public ReturnSate update(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            Location location = index.get((int) jsonObject.get("id"));
+            if (location == null) return ReturnSate.NOT_EXISTS;
+            byte[] line = jsonObject.toString().getBytes(StandardCharsets.UTF_8);
+            resize(location, location.offset + location.length, line.length - location.length);
+            write(location.offset, line);
+            location.length = line.length;
+        } catch (JSONException | IOException e) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return ReturnSate.SUCCESS;
+    }
+
+    @Override
+    public ReturnSate remove(JSONObject jsonObject) {
+        fileLock.writeLock().lock();
+        try {
+            int id = (int) jsonObject.get("id");
+            Location location = index.get(id);
+            if (location == null) return ReturnSate.NOT_EXISTS;
+            long next = lineEnd(location.offset, size) + 1; // start of the next line
+            resize(location, next, -(next - location.offset));
+            index.remove(id);
+        } catch (JSONException | IOException e) {
+            return ReturnSate.FAILURE;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return ReturnSate.SUCCESS;
+    }
+
+    /**
+     * flush the mapping and truncate the file to its data. the repo can't be used after it's closed
+     *
+     * @throws IOException if flushing or truncating the file failed
+     */
+    void close() throws IOException {
+        fileLock.writeLock().lock();
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            segments = new MappedByteBuffer[0];
+            capacity = 0;
+            channel.truncate(size);
+            channel.close();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * move the data after a point to grow or shrink the line before it, and shift the locations after it.
+     * must be called holding the write lock
+     *
+     * @param location location of the line resized
+     * @param from     position of the data to move
+     * @param delta    number of bytes to move the data by
+     * @throws IOException if growing the mapping failed
+     */
+    private void resize(Location location, long from, long delta) throws IOException {
+        if (delta == 0) return;
+        ensureCapacity(size + delta);
+        move(from, from + delta, size - from);
+        if (delta < 0) fill(size + delta, -delta); // freed tail must not look like data after a crash
+        for (Location other : index.values()) {
+            if (other.offset > location.offset) other.offset += delta;
+        }
+        size += delta;
+    }
+
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed > capacity) remap(Math.max(needed, capacity * 2));
+    }
+
+    /**
+     * map the file with a new capacity, growing the file if needed.
+     * full segments are kept, the last one is mapped again with its new size
+     *
+     * @param newCapacity number of bytes to map
+     * @throws IOException if mapping the file failed
+     */
+    private void remap(long newCapacity) throws IOException {
+        int count = (int) ((newCapacity + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        MappedByteBuffer[] remapped = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i * SEGMENT_SIZE;
+            long length = Math.min(SEGMENT_SIZE, newCapacity - start);
+            remapped[i] = i < segments.length && segments[i].capacity() == length ?
+                    segments[i] : channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+        }
+        segments = remapped;
+        capacity = newCapacity;
+    }
+
+    private byte byteAt(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    private long lineEnd(long from, long limit) {
+        long position = from;
+        while (position < limit && byteAt(position) != '\n' && byteAt(position) != 0) position++;
+        return position;
+    }
+
+    private int lineLength(long start, long end) {
+        long length = end - start;
+        if (length > 0 && byteAt(end - 1) == '\r') length--;
+        return (int) length;
+    }
+
+    /**
+     * @return the start of the first line from a position on that isn't blank, size if there's none
+     */
+    private long skipBlank(long position) {
+        while (position < size) {
+            long end = lineEnd(position, size);
+            if (lineLength(position, end) > 0) return position;
+            position = end + 1;
+        }
+        return size;
+    }
+
+    private byte[] read(long position, int length) {
+        byte[] bytes = new byte[length];
+        int done = 0;
+        while (done < length) {
+            long current = position + done;
+            int offset = (int) (current % SEGMENT_SIZE);
+            int chunk = Math.min(length - done, SEGMENT_SIZE - offset);
+            segments[(int) (current / SEGMENT_SIZE)].get(offset, bytes, done, chunk);
+            done += chunk;
+        }
+        return bytes;
+    }
+
+    private void write(long position, byte[] bytes) {
+        int done = 0;
+        while (done < bytes.length) {
+            long current = position + done;
+            int offset = (int) (current % SEGMENT_SIZE);
+            int chunk = Math.min(bytes.length - done, SEGMENT_SIZE - offset);
+            segments[(int) (current / SEGMENT_SIZE)].put(offset, bytes, done, chunk);
+            done += chunk;
+        }
+    }
+
+    private void fill(long position, long length) {
+        byte[] zeros = new byte[(int) Math.min(length, MOVE_CHUNK)];
+        for (long done = 0; done < length; done += zeros.length) {
+            write(position + done, length - done < zeros.length ? new byte[(int) (length - done)] : zeros);
+        }
+    }
+
+    /**
+     * copy a range of the mapping to a possibly overlapping destination
+     */
+    private void move(long from, long to, long length) {
+        if (length <= 0 || from == to) return;
+        if (to < from) { // moving backwards, copy from the start
+            for (long done = 0; done < length; ) {
+                int chunk = (int) Math.min(MOVE_CHUNK, length - done);
+                write(to + done, read(from + done, chunk));
+                done += chunk;
+            }
+        } else { // moving forwards, copy from the end
+            for (long left = length; left > 0; ) {
+                int chunk = (int) Math.min(MOVE_CHUNK, left);
+                left -= chunk;
+                write(to + left, read(from + left, chunk));
+            }
+        }
+    }
+}
@@ -1,3 +1,5 @@
+package cache;
+
 /**
  * A Thread for testing purpose
  */
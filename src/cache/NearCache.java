@@ -0,0 +1,405 @@
+package cache;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Subscriber that holds the entities it reads in a small store of its own (L1), in front of the cache it
+ * subscribes to (L2). Owned by a single thread, or a few, its hottest reads are served from memory other threads
+ * don't read or write, instead of the map of the cache shared by all threads.
+ * An entity is invalidated by the notification of every write of it through the cache, so with an asynchronous
+ * dispatcher it may be read stale until the notification is delivered. Changes the cache isn't notified of
+ * (like a refresh from repo) reach it only once the entity is evicted from L1.
+ * L1 is an open addressing table keyed by primitive ids, like IntHashStore, so a hit doesn't box its id.
+ * A hit takes no lock and only marks its entry as referenced. Fills and invalidations write the table holding its
+ * lock. Once L1 is full, a fill evicts the first entry not referenced since the hand of the eviction last passed
+ * over it (a CLOCK approximation of LRU)
+ *
+ * @param <T> An object that implements Entity
+ */
+class NearCache<T extends Entity> implements Subscriber<T> {
+    private static final LatencyHistogram.Summary NONE = new LatencyHistogram.Summary(0, 0, 0, 0, 0, 0, 0);
+    private static final int INITIAL_CAPACITY = 16; // a power of two
+    private static final Object TOMBSTONE = new Object();
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final Cache<T> cache;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // guards the writes of the table and the fields below
+    private final Object lock = new Object();
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private int size; // slots of entities and fills
+    private int used; // slots taken by entities, fills or tombstones
+    private int hand; // the slot the eviction passed over last
+
+    /**
+     * A table of ids and slots. a position is free while its slot is null, once set its id never changes
+     */
+    private static final class Table {
+        final int[] ids;
+        final Object[] slots;
+
+        Table(int capacity) {
+            ids = new int[capacity];
+            slots = new Object[capacity];
+        }
+    }
+
+    /**
+     * An entry of L1. a slot without an entity is a fill in progress: an invalidation of its id removes it, so
+     * an entity read from L2 concurrently with the invalidation isn't kept
+     */
+    private static final class Slot<T> {
+        final T entity;
+        volatile boolean referenced; // set by a hit, cleared by the eviction passing over it
+
+        Slot(T entity) {
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * @param cache      the cache to read through and subscribe to
+     * @param maxEntries maximum number of entities held in L1
+     */
+    NearCache(Cache<T> cache, int maxEntries) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        this.cache = cache;
+        this.maxEntries = maxEntries;
+        cache.register(this);
+    }
+
+    @Override
+    public T get(Integer eId) {
+        return get(eId.intValue());
+    }
+
+    @Override
+    public T get(int eId) {
+        T entity = hit(eId);
+        if (entity != null) {
+            hits.increment();
+            return entity;
+        }
+        misses.increment();
+        Slot<T> fill = startFill(eId);
+        try {
+            entity = cache.get(eId);
+        } finally {
+            if (fill != null) fill(eId, fill, entity);
+        }
+        return entity;
+    }
+
+    @Override
+    public ArrayList<T> getAll(Collection<Integer> eIds) {
+        Map<Integer, T> found = new HashMap<>();
+        Map<Integer, Slot<T>> fills = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer eId : eIds) {
+            T entity = hit(eId);
+            if (entity != null) {
+                found.put(eId, entity);
+                continue;
+            }
+            missing.add(eId);
+            Slot<T> fill = startFill(eId);
+            if (fill != null) fills.put(eId, fill);
+        }
+        hits.add(eIds.size() - missing.size());
+        misses.add(missing.size());
+        if (!missing.isEmpty()) {
+            try {
+                for (T entity : cache.getAll(missing)) {
+                    found.put(entity.getId(), entity);
+                }
+            } finally {
+                fills.forEach((eId, fill) -> fill(eId, fill, found.get(eId)));
+            }
+        }
+        ArrayList<T> entities = new ArrayList<>(found.size());
+        for (Integer eId : eIds) {
+            T entity = found.get(eId);
+            if (entity != null) entities.add(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * versions are of the entries of L2, so it's always read
+     */
+    @Override
+    public Versioned<T> getVersioned(int eId) {
+        return cache.getVersioned(eId);
+    }
+
+    @Override
+    public boolean add(T entity) throws RepoAccessException {
+        try {
+            return cache.add(entity);
+        } finally {
+            invalidate(entity.getId());
+        }
+    }
+
+    @Override
+    public boolean update(T entity) throws RepoAccessException {
+        try {
+            return cache.update(entity);
+        } finally {
+            invalidate(entity.getId());
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate(T entity, long expectedVersion) throws RepoAccessException {
+        try {
+            return cache.compareAndUpdate(entity, expectedVersion);
+        } finally {
+            invalidate(entity.getId());
+        }
+    }
+
+    @Override
+    public boolean remove(T entity) throws RepoAccessException {
+        try {
+            return cache.remove(entity);
+        } finally {
+            invalidate(entity.getId());
+        }
+    }
+
+    @Override
+    public boolean remove(int eId) throws RepoAccessException {
+        try {
+            return cache.remove(eId);
+        } finally {
+            invalidate(eId);
+        }
+    }
+
+    @Override
+    public boolean[] addAll(List<T> entities) throws RepoAccessException {
+        try {
+            return cache.addAll(entities);
+        } finally {
+            invalidateAll(entities);
+        }
+    }
+
+    @Override
+    public boolean[] updateAll(List<T> entities) throws RepoAccessException {
+        try {
+            return cache.updateAll(entities);
+        } finally {
+            invalidateAll(entities);
+        }
+    }
+
+    @Override
+    public boolean[] removeAll(List<T> entities) throws RepoAccessException {
+        try {
+            return cache.removeAll(entities);
+        } finally {
+            invalidateAll(entities);
+        }
+    }
+
+    @Override
+    public void inform(Cache.Operation operation, T entity) {
+        invalidate(entity.getId());
+    }
+
+    @Override
+    public void informAll(Cache.Operation operation, List<T> entities) {
+        invalidateAll(entities);
+    }
+
+    /**
+     * the statistics of L1, its misses are the reads of L2 counted by the stats of the cache
+     *
+     * @return the statistics recorded so far
+     */
+    CacheStats stats() {
+        int entries = 0;
+        Table table = this.table;
+        for (int i = 0; i < table.slots.length; i++) {
+            Object slot = SLOTS.getAcquire(table.slots, i);
+            if (slot instanceof Slot && ((Slot<?>) slot).entity != null) entries++;
+        }
+        return new CacheStats(hits.sum(), misses.sum(), 0, 0, 0, entries, 0, 0, NONE, NONE,
+                new EnumMap<>(CacheStats.RepoCall.class));
+    }
+
+    /**
+     * unsubscribe from the cache, the entities held can't be invalidated anymore
+     */
+    void close() {
+        cache.unregister(this);
+    }
+
+    /**
+     * @return the entity held in L1, marked as referenced. null if not held
+     */
+    private T hit(int eId) {
+        Slot<T> slot = slot(eId);
+        if (slot == null || slot.entity == null) return null;
+        if (!slot.referenced) slot.referenced = true; // written only once, a hot entry isn't written by every hit
+        return slot.entity;
+    }
+
+    /**
+     * @return the slot of an id in L1, read without locking. null if not held
+     */
+    @SuppressWarnings("unchecked")
+    private Slot<T> slot(int eId) {
+        Table table = this.table;
+        int mask = table.ids.length - 1;
+        for (int i = IntHashStore.hash(eId) & mask; ; i = (i + 1) & mask) {
+            // the slot is set after the id, reading it first makes the id visible
+            Object slot = SLOTS.getAcquire(table.slots, i);
+            if (slot == null) return null;
+            if (table.ids[i] == eId) return slot == TOMBSTONE ? null : (Slot<T>) slot;
+        }
+    }
+
+    /**
+     * @return the slot of a fill of an entity about to be read from L2, null if it's held or filled already
+     */
+    private Slot<T> startFill(int eId) {
+        synchronized (lock) {
+            int i = indexOf(table, eId);
+            Object slot = table.slots[i];
+            if (slot != null && slot != TOMBSTONE) return null;
+            Slot<T> fill = new Slot<>(null);
+            insert(i, eId, fill);
+            return fill;
+        }
+    }
+
+    /**
+     * keep an entity read from L2 in L1, unless its id was invalidated since the fill started, as the entity may
+     * be the one the invalidation was of
+     *
+     * @param entity the entity read, null if not exists or failed to be read
+     */
+    private void fill(int eId, Slot<T> fill, T entity) {
+        synchronized (lock) {
+            int i = indexOf(table, eId);
+            if (table.slots[i] != fill) return; // invalidated
+            if (entity == null) {
+                SLOTS.setRelease(table.slots, i, TOMBSTONE);
+                size--;
+                return;
+            }
+            SLOTS.setRelease(table.slots, i, new Slot<>(entity));
+            if (size > maxEntries) evict();
+        }
+    }
+
+    /**
+     * evict entries until L1 fits its bound, must be called holding the lock. the hand goes around the table
+     * clearing the referenced marks, and evicts the first entry not referenced since it passed, skipping the fills
+     * in progress
+     */
+    private void evict() {
+        Object[] slots = table.slots;
+        int mask = slots.length - 1;
+        // two rounds clear every mark, unless L1 is all fills in progress
+        for (int passed = 0; size > maxEntries && passed <= 2 * slots.length; passed++) {
+            hand = (hand + 1) & mask;
+            if (!(slots[hand] instanceof Slot)) continue;
+            Slot<?> slot = (Slot<?>) slots[hand];
+            if (slot.entity == null) continue;
+            if (slot.referenced) {
+                slot.referenced = false;
+            } else {
+                SLOTS.setRelease(slots, hand, TOMBSTONE);
+                size--;
+            }
+        }
+    }
+
+    private void invalidate(int eId) {
+        if (slot(eId) == null) return; // not held, no need to lock
+        synchronized (lock) {
+            int i = indexOf(table, eId);
+            Object slot = table.slots[i];
+            if (slot == null || slot == TOMBSTONE) return;
+            SLOTS.setRelease(table.slots, i, TOMBSTONE);
+            size--;
+        }
+    }
+
+    private void invalidateAll(List<T> entities) {
+        for (T entity : entities) {
+            invalidate(entity.getId());
+        }
+    }
+
+    /**
+     * must be called holding the lock
+     *
+     * @return the position of an id in a table, or the free position it would take
+     */
+    private static int indexOf(Table table, int eId) {
+        int mask = table.ids.length - 1;
+        int i = IntHashStore.hash(eId) & mask;
+        while (table.slots[i] != null && table.ids[i] != eId) i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * put the slot of an id not held in L1, must be called holding the lock
+     *
+     * @param i the position of the id returned by indexOf
+     */
+    private void insert(int i, int eId, Slot<T> slot) {
+        Table table = this.table;
+        if (table.slots[i] == null) {
+            if ((used + 1) * 4 > table.ids.length * 3) { // too full, rebuild and look again
+                table = rebuild(size + 1);
+                i = indexOf(table, eId);
+            }
+            used++;
+            table.ids[i] = eId;
+        }
+        size++;
+        SLOTS.setRelease(table.slots, i, slot);
+    }
+
+    /**
+     * copy the slots held to a new table sized for them, dropping the tombstones. must be called holding the lock
+     *
+     * @param entries number of slots the table should fit
+     * @return the new table, already published to readers
+     */
+    private Table rebuild(int entries) {
+        int capacity = INITIAL_CAPACITY;
+        while (entries * 2 > capacity) capacity <<= 1; // at most half full after the rebuild
+        Table old = this.table;
+        Table rebuilt = new Table(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.ids.length; i++) {
+            Object slot = old.slots[i];
+            if (slot == null || slot == TOMBSTONE) continue;
+            int j = IntHashStore.hash(old.ids[i]) & mask;
+            while (rebuilt.slots[j] != null) j = (j + 1) & mask;
+            rebuilt.ids[j] = old.ids[i];
+            rebuilt.slots[j] = slot;
+        }
+        used = size;
+        hand &= mask;
+        this.table = rebuilt; // volatile write publishes the whole table
+        return rebuilt;
+    }
+}
@@ -0,0 +1,314 @@
+package cache;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Unbounded store that keeps the entries outside of the heap, serialized by a binary converter into slabs of
+ * direct memory, and decodes them on get. The heap holds only a compact index of ids to slot addresses, so it
+ * stays small and cheap to collect however many entries are stored.
+ * Slots are sized in powers of two, a freed slot is reused by the next record of its size.
+ * An optional on-heap front holds the hottest entries decoded.
+ *
+ * @param <T> An object that implements Entity
+ */
+class OffHeapStore<T extends Entity> implements EntityStore<CacheEntry<T>> {
+    private static final int DEFAULT_SLAB_SIZE = 16 << 20;
+    private static final int MIN_SLOT_SHIFT = 5; // smallest slot is 32 bytes
+    // a slot holds [version][write time][access time][record length][record]. slots start at multiples of the
+    // smallest slot, so the access time is aligned, as its atomic access requires
+    private static final int VERSION = 0;
+    private static final int WRITE_TIME = VERSION + Long.BYTES;
+    private static final int ACCESS_TIME = WRITE_TIME + Long.BYTES;
+    private static final int LENGTH = ACCESS_TIME + Long.BYTES;
+    private static final int HEADER = LENGTH + Integer.BYTES;
+    // the access time is written by readers, which hold only the read lock
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final BinaryConverter<T> converter;
+    private final int slabSize;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private int slabPosition; // first free byte of the last slab
+    // freed slots of every size class, as stacks of addresses
+    private final long[][] freeSlots = new long[32][];
+    private final int[] freeCounts = new int[32];
+    private final IdIndex index = new IdIndex();
+    // null if there's no on-heap front
+    private final SegmentedLruStore<CacheEntry<T>> front;
+    // readers decode concurrently, writers modify the slabs and the index exclusively
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param converter    converter of the entities to binary records
+     * @param frontEntries number of decoded entries held on heap, 0 for none
+     */
+    OffHeapStore(BinaryConverter<T> converter, int frontEntries) {
+        this(converter, frontEntries, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param converter    converter of the entities to binary records
+     * @param frontEntries number of decoded entries held on heap, 0 for none
+     * @param slabSize     bytes of direct memory allocated at a time, bounds the size of a record
+     */
+    OffHeapStore(BinaryConverter<T> converter, int frontEntries, int slabSize) {
+        if (frontEntries < 0) throw new IllegalArgumentException("frontEntries must not be negative: " + frontEntries);
+        if (slabSize < 1 << MIN_SLOT_SHIFT) throw new IllegalArgumentException("slabSize too small: " + slabSize);
+        this.converter = converter;
+        this.slabSize = slabSize;
+        this.front = frontEntries > 0 ? new SegmentedLruStore<>(frontEntries) : null;
+    }
+
+    @Override
+    public CacheEntry<T> get(int id) {
+        if (front != null) {
+            CacheEntry<T> entry = front.get(id);
+            if (entry != null) return entry;
+        }
+        lock.readLock().lock();
+        try {
+            long address = index.get(id);
+            if (address < 0) return null;
+            CacheEntry<T> entry = decode(address);
+            if (entry == null) return null;
+            // a get is an access, there's no other way to record it for an entry decoded again on every get
+            LONGS.setOpaque(slabs.get(slabOf(address)), offsetOf(address) + ACCESS_TIME, System.nanoTime());
+            // put in front under the lock, so it can't override an entry written meanwhile
+            if (front != null) front.put(id, entry);
+            return entry;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(int id, CacheEntry<T> value) {
+        byte[] record = converter.getBytes(value.entity);
+        if (record == null) throw new IllegalArgumentException("Entity " + id + " can't be converted to binary");
+        int sizeClass = sizeClassOf(HEADER + record.length);
+        if (1L << sizeClass > slabSize)
+            throw new IllegalArgumentException("Entity " + id + " is bigger than a slab: " + record.length);
+        lock.writeLock().lock();
+        try {
+            long old = index.get(id);
+            if (old >= 0) free(old);
+            long address = allocate(sizeClass);
+            ByteBuffer slab = slabs.get(slabOf(address));
+            int offset = offsetOf(address);
+            slab.putLong(offset + VERSION, value.version);
+            slab.putLong(offset + WRITE_TIME, value.writeTime);
+            LONGS.setOpaque(slab, offset + ACCESS_TIME, value.getAccessTime());
+            slab.putInt(offset + LENGTH, record.length);
+            slab.put(offset + HEADER, record);
+            index.put(id, address);
+            if (front != null) front.put(id, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CacheEntry<T> remove(int id) {
+        lock.writeLock().lock();
+        try {
+            long address = index.remove(id);
+            if (address < 0) return null;
+            CacheEntry<T> entry = decode(address);
+            free(address);
+            if (front != null) front.remove(id);
+            return entry;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * every value is decoded, and the action is called holding the read lock so it must not write to the store
+     */
+    @Override
+    public void forEach(Consumer<? super CacheEntry<T>> action) {
+        lock.readLock().lock();
+        try {
+            index.forEach(address -> {
+                CacheEntry<T> entry = decode(address);
+                if (entry != null) action.accept(entry);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes of direct memory allocated
+     */
+    long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * decode the entry in a slot, must be called holding the lock
+     *
+     * @return the entry, null if the record can't be converted
+     */
+    private CacheEntry<T> decode(long address) {
+        ByteBuffer slab = slabs.get(slabOf(address));
+        int offset = offsetOf(address);
+        int length = slab.getInt(offset + LENGTH);
+        long version = slab.getLong(offset + VERSION);
+        long writeTime = slab.getLong(offset + WRITE_TIME);
+        long accessTime = (long) LONGS.getOpaque(slab, offset + ACCESS_TIME);
+        T entity = converter.getEntity(slab.duplicate().limit(offset + HEADER + length).position(offset + HEADER));
+        return entity == null ? null : new CacheEntry<>(entity, version, writeTime, accessTime);
+    }
+
+    /**
+     * allocate a slot, reusing a freed one of its size if exists. must be called holding the write lock
+     *
+     * @param sizeClass log2 of the size of the slot
+     * @return the address of the slot
+     */
+    private long allocate(int sizeClass) {
+        if (freeCounts[sizeClass] > 0) return freeSlots[sizeClass][--freeCounts[sizeClass]];
+        int slotSize = 1 << sizeClass;
+        if (slabs.isEmpty() || slabPosition + slotSize > slabSize) {
+            // the rest of the last slab is left unused
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+            slabPosition = 0;
+        }
+        long address = (long) (slabs.size() - 1) << 32 | slabPosition;
+        slabPosition += slotSize;
+        return address;
+    }
+
+    private void free(long address) {
+        ByteBuffer slab = slabs.get(slabOf(address));
+        int sizeClass = sizeClassOf(HEADER + slab.getInt(offsetOf(address) + LENGTH));
+        long[] stack = freeSlots[sizeClass];
+        if (stack == null || freeCounts[sizeClass] == stack.length)
+            freeSlots[sizeClass] = stack = stack == null ? new long[16] : Arrays.copyOf(stack, stack.length * 2);
+        stack[freeCounts[sizeClass]++] = address;
+    }
+
+    private static int sizeClassOf(int bytes) {
+        return Math.max(MIN_SLOT_SHIFT, 32 - Integer.numberOfLeadingZeros(bytes - 1));
+    }
+
+    private static int slabOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Open addressing hash map of ids to slot addresses, in two primitive arrays so an entry costs 12 bytes
+     * instead of a boxed key, a boxed value and a node. not thread safe, guarded by the store's lock
+     */
+    private static final class IdIndex {
+        private static final long EMPTY = -1;
+
+        private int[] keys = new int[16];
+        private long[] values = filled(16);
+        private int size;
+
+        long get(int id) {
+            int mask = keys.length - 1;
+            for (int i = slot(id, mask); values[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == id) return values[i];
+            }
+            return EMPTY;
+        }
+
+        void put(int id, long address) {
+            int mask = keys.length - 1;
+            int i = slot(id, mask);
+            for (; values[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    values[i] = address;
+                    return;
+                }
+            }
+            keys[i] = id;
+            values[i] = address;
+            if (++size * 4 > keys.length * 3) resize();
+        }
+
+        long remove(int id) {
+            int mask = keys.length - 1;
+            int i = slot(id, mask);
+            while (values[i] != EMPTY && keys[i] != id) i = (i + 1) & mask;
+            long removed = values[i];
+            if (removed == EMPTY) return EMPTY;
+            // shift back the entries after it, so no lookup stops at the hole
+            for (int j = (i + 1) & mask; values[j] != EMPTY; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            values[i] = EMPTY;
+            size--;
+            return removed;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(LongConsumer action) {
+            for (long address : values) {
+                if (address != EMPTY) action.accept(address);
+            }
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = filled(keys.length);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int slot(int id, int mask) {
+            int h = id * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static long[] filled(int length) {
+            long[] values = new long[length];
+            Arrays.fill(values, EMPTY);
+            return values;
+        }
+    }
+}
@@ -1,3 +1,5 @@
+package cache;
+
 /**
  * Represents an exception in accessing info in repository
  */
@@ -9,4 +11,8 @@ class RepoAccessException extends Exception {
     RepoAccessException(int eId) {
         super("Repository of Cache is not accessible. Entity " + eId + " not modified.");
     }
+
+    RepoAccessException(String message) {
+        super(message);
+    }
 }
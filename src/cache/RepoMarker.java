@@ -0,0 +1,85 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Marker of the state of a repository file that only grows by appends between rewrites: its size and the CRC32 of
+ * its content. A later file whose first bytes still have that CRC32 only had lines appended since, and catching up
+ * with it takes reading those lines only
+ */
+final class RepoMarker {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    final long size;
+    final long crc;
+
+    RepoMarker(long size, long crc) {
+        this.size = size;
+        this.crc = crc;
+    }
+
+    /**
+     * @param marker a marker as returned by toString
+     * @return the marker, null if it's not a valid marker
+     */
+    static RepoMarker parse(String marker) {
+        int separator = marker == null ? -1 : marker.indexOf(':');
+        if (separator < 0) return null;
+        try {
+            return new RepoMarker(Long.parseLong(marker.substring(0, separator)),
+                    Long.parseUnsignedLong(marker.substring(separator + 1), 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param channel a file
+     * @return the marker of the current content of the file
+     * @throws IOException if reading the file failed
+     */
+    static RepoMarker of(FileChannel channel) throws IOException {
+        long size = channel.size();
+        return new RepoMarker(size, crc(channel, size));
+    }
+
+    /**
+     * @param channel a file
+     * @return true if the file starts with the content this marker was taken of
+     * @throws IOException if reading the file failed
+     */
+    boolean isPrefixOf(FileChannel channel) throws IOException {
+        return channel.size() >= size && crc(channel, size) == crc;
+    }
+
+    /**
+     * @return the CRC32 of the first bytes of a file
+     */
+    static long crc(FileChannel channel, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        update(crc, channel, length);
+        return crc.getValue();
+    }
+
+    /**
+     * update a CRC32 with the first bytes of a file
+     */
+    static void update(CRC32 crc, FileChannel channel, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        for (long position = 0; position < length; ) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of file");
+            crc.update(buffer.flip());
+            position += read;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return size + ":" + Long.toHexString(crc);
+    }
+}
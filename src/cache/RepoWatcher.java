@@ -0,0 +1,75 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches a repository file by a WatchService of its directory, and calls a listener on a background thread
+ * once the file was modified. the events pending when the thread wakes up are coalesced to a single call
+ */
+class RepoWatcher {
+    private final WatchService watchService;
+    private final Path fileName;
+    private final Runnable listener;
+    private volatile boolean closed;
+
+    /**
+     * @param file     the file to watch
+     * @param listener called once the file was created or modified
+     * @throws IOException if the directory of the file can't be watched
+     */
+    RepoWatcher(Path file, Runnable listener) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        this.fileName = absolute.getFileName();
+        this.listener = listener;
+        this.watchService = absolute.getFileSystem().newWatchService();
+        absolute.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(this::watch, "cache-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean modified = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // an overflow means events were lost, the file may be one of them
+                    modified |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+                }
+                if (modified) {
+                    try {
+                        listener.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Failed to capture changes of " + fileName + ": " + e.getMessage());
+                    }
+                }
+                if (!key.reset()) {
+                    if (!closed) System.err.println("Directory of " + fileName + " is no longer watched");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * stop watching, a change being captured is completed by the background thread
+     */
+    void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Failed to stop watching " + fileName);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package cache;
+
+import org.json.JSONObject;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Represents a repository provider for a cache (to access a low layer)
+ * Implementations must be thread safe: the cache calls them concurrently for entities of different ids
+ */
+public interface RepositoryProvider {
+    enum ReturnSate {SUCCESS, FAILURE, ALREADY_EXISTS, NOT_EXISTS}
+
+    /**
+     * get a repo entry
+     *
+     * @param id number of entry
+     * @return a JSON object represents the entry. null if not exists or repo failed to provide
+     */
+    JSONObject get(Integer id);
+
+    /**
+     * get a repo entry, telling an entry that doesn't exist from a repo that failed to provide it
+     *
+     * @param id number of entry
+     * @return a JSON object represents the entry. null if not exists
+     * @throws RepoAccessException if repo failed to provide. by default a failure can't be told from get, and
+     *                             returns null
+     */
+    default JSONObject find(Integer id) throws RepoAccessException {
+        return get(id);
+    }
+
+    /**
+     * get all entries in repo
+     *
+     * @return List of all entries in the repo, null if failed to provide
+     */
+    ArrayList<JSONObject> getAll();
+
+    /**
+     * add an entry to repo
+     *
+     * @param jsonObject JSON object to add
+     * @return SUCCESS if added successfully, ALREADY_EXISTS if already exists, FAILURE if repo failed to add
+     */
+    ReturnSate add(JSONObject jsonObject);
+
+    /**
+     * update an entry
+     *
+     * @param jsonObject JSON object to update
+     * @return SUCCESS if updated successfully, NOT_EXISTS if not exists, FAILURE if repo failed to update
+     */
+    ReturnSate update(JSONObject jsonObject);
+
+    /**
+     * remove an entry
+     *
+     * @param jsonObject JSON object to remove
+     * @return SUCCESS if removed successfully, NOT_EXISTS if not exists, FAILURE if repo failed to remove
+     */
+    ReturnSate remove(JSONObject jsonObject);
+
+    /**
+     * stream all entries in repo, for a bulk load that doesn't hold them all in memory at once.
+     * the stream may be parallel, and must be closed once consumed
+     *
+     * @return a stream of all entries in the repo, null if failed to provide. a failure while streaming throws an
+     * UncheckedIOException
+     */
+    default Stream<JSONObject> stream() {
+        ArrayList<JSONObject> jsonObjects = getAll();
+        return jsonObjects == null ? null : jsonObjects.stream();
+    }
+
+    /**
+     * @return a marker of the current state of repo, to catch up later with the changes made after it.
+     * null if not supported or failed to provide
+     */
+    default String marker() {
+        return null;
+    }
+
+    /**
+     * get the entries changed since a marker was taken
+     *
+     * @param marker a marker returned by marker
+     * @return the latest entry of every id added or updated since, null for an id removed since.
+     * null if the changes can't be told (the repo was rewritten since) or failed to provide
+     */
+    default Map<Integer, JSONObject> changesSince(String marker) {
+        return null;
+    }
+
+    /**
+     * get the entries changed by someone else, like another process writing the file of repo, since the previous
+     * call. the changes are recorded from the first call on
+     *
+     * @return the latest entry of every id added or updated since, null for an id removed since.
+     * null if the changes can't be told (the repo was rewritten since), not supported or failed to provide
+     */
+    default Map<Integer, JSONObject> externalChanges() {
+        return null;
+    }
+
+    /**
+     * get the entries of a range of ids
+     *
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return List of the entries that exist in the range ordered by id, null if failed to provide
+     */
+    default ArrayList<JSONObject> getRange(int fromId, int toId) {
+        try (Stream<JSONObject> jsonObjects = streamRange(fromId, toId)) {
+            return jsonObjects == null ? null : jsonObjects.collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * stream the entries of a range of ids ordered by id, the stream must be closed.
+     * by default all entries are streamed and sorted, a repo with an index of sorted ids reads the range only
+     *
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return the entries that exist in the range, null if failed to provide
+     */
+    default Stream<JSONObject> streamRange(int fromId, int toId) {
+        Stream<JSONObject> jsonObjects = stream();
+        if (jsonObjects == null) return null;
+        return jsonObjects.filter(jsonObject -> jsonObject.optInt("id") >= fromId && jsonObject.optInt("id") <= toId)
+                .sorted(Comparator.comparingInt(jsonObject -> jsonObject.optInt("id")));
+    }
+
+    /**
+     * get the entries of several ids
+     *
+     * @param ids numbers of entries
+     * @return List of the entries that exist, null if failed to provide
+     */
+    default ArrayList<JSONObject> getAll(Collection<Integer> ids) {
+        ArrayList<JSONObject> jsonObjects = new ArrayList<>();
+        try {
+            for (Integer id : ids) {
+                JSONObject jsonObject = find(id);
+                if (jsonObject != null) jsonObjects.add(jsonObject);
+            }
+        } catch (RepoAccessException e) {
+            return null;
+        }
+        return jsonObjects;
+    }
+
+    /**
+     * add several entries to repo
+     *
+     * @param jsonObjects JSON objects to add
+     * @return the state of every entry, in the order given. see add
+     */
+    default ArrayList<ReturnSate> addAll(List<JSONObject> jsonObjects) {
+        ArrayList<ReturnSate> returnSates = new ArrayList<>(jsonObjects.size());
+        for (JSONObject jsonObject : jsonObjects) {
+            returnSates.add(add(jsonObject));
+        }
+        return returnSates;
+    }
+
+    /**
+     * update several entries
+     *
+     * @param jsonObjects JSON objects to update
+     * @return the state of every entry, in the order given. see update
+     */
+    default ArrayList<ReturnSate> updateAll(List<JSONObject> jsonObjects) {
+        ArrayList<ReturnSate> returnSates = new ArrayList<>(jsonObjects.size());
+        for (JSONObject jsonObject : jsonObjects) {
+            returnSates.add(update(jsonObject));
+        }
+        return returnSates;
+    }
+
+    /**
+     * remove several entries
+     *
+     * @param jsonObjects JSON objects to remove
+     * @return the state of every entry, in the order given. see remove
+     */
+    default ArrayList<ReturnSate> removeAll(List<JSONObject> jsonObjects) {
+        ArrayList<ReturnSate> returnSates = new ArrayList<>(jsonObjects.size());
+        for (JSONObject jsonObject : jsonObjects) {
+            returnSates.add(remove(jsonObject));
+        }
+        return returnSates;
+    }
+}
@@ -0,0 +1,116 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Index of the ids of cached entities by an attribute of theirs. A hash index finds the ids of an attribute value,
+ * a sorted index also finds the ids of a range of values. Entities whose attribute is null are not indexed.
+ * The updates of an id are serialized, and so are the changes of the ids of a value, so updates of different ids
+ * and values run concurrently. Lookups are lock free
+ *
+ * @param <T> An object that implements Entity
+ */
+class SecondaryIndex<T extends Entity> {
+    private final Function<? super T, ?> attribute;
+    private final ConcurrentMap<Object, Set<Integer>> ids;
+    // the indexed value of every id, to unindex it when the entity changes. an id is updated in its compute
+    private final ConcurrentMap<Integer, Object> values = new ConcurrentHashMap<>();
+
+    /**
+     * @param attribute extracts the indexed value of an entity, its values must be Comparable if sorted
+     * @param sorted    true for a sorted index
+     */
+    SecondaryIndex(Function<? super T, ?> attribute, boolean sorted) {
+        this.attribute = attribute;
+        this.ids = sorted ? new ConcurrentSkipListMap<>() : new ConcurrentHashMap<>();
+    }
+
+    boolean isSorted() {
+        return ids instanceof ConcurrentSkipListMap;
+    }
+
+    /**
+     * @return the indexed value of an entity
+     */
+    Object valueOf(T entity) {
+        return attribute.apply(entity);
+    }
+
+    /**
+     * index an entity, replacing the value indexed for its id
+     */
+    void put(T entity) {
+        Object value = valueOf(entity);
+        values.compute(entity.getId(), (id, old) -> {
+            if (!Objects.equals(old, value)) {
+                if (old != null) unindex(id, old);
+                if (value != null) index(id, value);
+            }
+            return value;
+        });
+    }
+
+    /**
+     * unindex an id
+     */
+    void remove(int id) {
+        values.computeIfPresent(id, (k, old) -> {
+            unindex(k, old);
+            return null;
+        });
+    }
+
+    /**
+     * @return the ids indexed by a value
+     */
+    List<Integer> get(Object value) {
+        Set<Integer> found = value == null ? null : ids.get(value);
+        return found == null ? new ArrayList<>() : new ArrayList<>(found);
+    }
+
+    /**
+     * @param from lowest value, inclusive
+     * @param to   highest value, inclusive
+     * @return the ids indexed by values in the range, in the order of the values. sorted index only
+     */
+    List<Integer> getRange(Object from, Object to) {
+        if (!isSorted()) throw new IllegalStateException("not a sorted index");
+        List<Integer> found = new ArrayList<>();
+        ConcurrentSkipListMap<Object, Set<Integer>> sorted = (ConcurrentSkipListMap<Object, Set<Integer>>) ids;
+        for (Set<Integer> range : sorted.subMap(from, true, to, true).values()) {
+            found.addAll(range);
+        }
+        return found;
+    }
+
+    /**
+     * add an id to the ids of a value. the ids of a value are changed holding their set, and a set emptied is
+     * dropped, so the id is added again if its set was dropped meanwhile
+     */
+    private void index(int id, Object value) {
+        while (true) {
+            Set<Integer> set = ids.computeIfAbsent(value, k -> ConcurrentHashMap.newKeySet());
+            synchronized (set) {
+                if (ids.get(value) == set) {
+                    set.add(id);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void unindex(int id, Object value) {
+        Set<Integer> set = ids.get(value);
+        if (set == null) return;
+        synchronized (set) {
+            if (set.remove(id) && set.isEmpty()) ids.remove(value, set);
+        }
+    }
+}
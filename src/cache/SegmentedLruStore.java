@@ -0,0 +1,186 @@
+package cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounded store with a segmented LRU eviction policy.
+ * New entries enter a small probation segment and are promoted to the protected segment only when read again,
+ * so a one-time scan over many ids can only evict other probation entries and never flushes the hot set.
+ * A get reads the values without locking and only records its access in a read buffer. The buffer is lossy and
+ * striped by thread, and it's drained into the segments under the lock of the policy by a write, or by the get
+ * that fills a stripe, so reads don't serialize on the order of the segments
+ *
+ * @param <V> type of the stored values
+ */
+class SegmentedLruStore<V> implements EntityStore<V> {
+    private static final double PROTECTED_RATIO = 0.8;
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    private static final int BUFFER_SIZE = 16;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int maxEntries;
+    private final int maxProtected;
+    private final ConcurrentHashMap<Integer, V> values = new ConcurrentHashMap<>();
+    // guards the segments, every put and remove of values is made holding it
+    private final ReentrantLock policyLock = new ReentrantLock();
+    // both segments are kept in insertion order: first id is the least recently used one
+    private final LinkedHashSet<Integer> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<Integer> protectedSegment = new LinkedHashSet<>();
+    // ids read since the last drain, a stripe of BUFFER_SIZE slots per STRIPES. accesses to a full stripe are lost
+    private final AtomicLongArray reads = new AtomicLongArray(STRIPES * BUFFER_SIZE);
+    private final AtomicInteger[] readCounts = new AtomicInteger[STRIPES];
+    private IntConsumer evictionListener = id -> {
+    };
+
+    /**
+     * @param maxEntries maximum number of entries held by the store
+     */
+    SegmentedLruStore(int maxEntries) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        this.maxEntries = maxEntries;
+        this.maxProtected = (int) (maxEntries * PROTECTED_RATIO);
+        for (int i = 0; i < reads.length(); i++) reads.set(i, EMPTY);
+        for (int i = 0; i < STRIPES; i++) readCounts[i] = new AtomicInteger();
+    }
+
+    @Override
+    public V get(int id) {
+        V value = values.get(id);
+        if (value != null) recordRead(id);
+        return value;
+    }
+
+    @Override
+    public void put(int id, V value) {
+        policyLock.lock();
+        try {
+            drainReads();
+            values.put(id, value);
+            if (protectedSegment.contains(id)) return;
+            probation.remove(id);
+            probation.add(id);
+            evict();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    @Override
+    public V remove(int id) {
+        policyLock.lock();
+        try {
+            V value = values.remove(id);
+            if (value != null && !protectedSegment.remove(id)) probation.remove(id);
+            return value;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * not an access, so the order of the entries doesn't change
+     */
+    @Override
+    public void forEach(Consumer<? super V> action) {
+        values.values().forEach(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     * called holding the lock of the policy, so the id can't be put again before it's told evicted
+     */
+    @Override
+    public void setEvictionListener(IntConsumer listener) {
+        policyLock.lock();
+        try {
+            this.evictionListener = listener;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * record a read in the stripe of the thread, and drain the buffer if it filled the stripe and the policy isn't
+     * locked by another thread
+     */
+    private void recordRead(int id) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        int slot = readCounts[stripe].getAndIncrement();
+        if (slot >= BUFFER_SIZE) return; // lost, the stripe is full until drained
+        reads.set(stripe * BUFFER_SIZE + slot, id);
+        if (slot == BUFFER_SIZE - 1 && policyLock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * apply the reads recorded to the segments, must be called holding the lock of the policy. a read of an id
+     * removed meanwhile is ignored
+     */
+    private void drainReads() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            if (readCounts[stripe].get() == 0) continue;
+            for (int i = stripe * BUFFER_SIZE; i < (stripe + 1) * BUFFER_SIZE; i++) {
+                long id = reads.getAndSet(i, EMPTY);
+                if (id != EMPTY) access((int) id);
+            }
+            // a read that took a slot before the reset but sets it after is drained the next time
+            readCounts[stripe].set(0);
+        }
+    }
+
+    /**
+     * move a protected id to the most recently used end, promote a probation id to the protected segment
+     */
+    private void access(int id) {
+        if (protectedSegment.remove(id)) protectedSegment.add(id);
+        else if (probation.remove(id)) promote(id);
+    }
+
+    /**
+     * move an id that was hit in probation to the protected segment, demoting the protected LRU if it is full
+     */
+    private void promote(int id) {
+        if (maxProtected == 0) {
+            probation.add(id);
+            return;
+        }
+        if (protectedSegment.size() >= maxProtected) probation.add(removeEldest(protectedSegment));
+        protectedSegment.add(id);
+    }
+
+    /**
+     * drop least recently used entries until the store fits its bound, probation entries first
+     */
+    private void evict() {
+        while (values.size() > maxEntries) {
+            int id = removeEldest(probation.isEmpty() ? protectedSegment : probation);
+            values.remove(id);
+            evictionListener.accept(id);
+        }
+    }
+
+    private static int removeEldest(LinkedHashSet<Integer> segment) {
+        Iterator<Integer> it = segment.iterator();
+        int eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+}
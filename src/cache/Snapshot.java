@@ -0,0 +1,105 @@
+package cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A snapshot of the entities of a cache, taken along with a marker of the repo state they reflect.
+ * The file holds [magic][marker][count] followed by a [length][record] per entity and the CRC32 of all of it,
+ * so restoring takes decoding binary records and catching up with the repo changes made after the marker,
+ * instead of parsing the whole repo
+ *
+ * @param <T> An object that implements Entity
+ */
+final class Snapshot<T extends Entity> {
+    private static final int MAGIC = 0x43534E50;
+
+    final String marker;
+    final List<T> entities;
+
+    private Snapshot(String marker, List<T> entities) {
+        this.marker = marker;
+        this.entities = entities;
+    }
+
+    /**
+     * write a snapshot to a temporary file and move it over the previous one, so a crash while writing leaves
+     * the previous snapshot intact
+     *
+     * @param filepath  path of the snapshot file
+     * @param marker    marker of the repo state the entities reflect
+     * @param entities  the entities
+     * @param converter converter of the entities to binary records
+     * @throws IOException if writing the file failed or an entity can't be converted
+     */
+    static <T extends Entity> void write(String filepath, String marker, Collection<T> entities,
+                                         BinaryConverter<T> converter) throws IOException {
+        Path path = Paths.get(filepath);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), crc);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(MAGIC);
+            out.writeUTF(marker);
+            out.writeInt(entities.size());
+            for (T entity : entities) {
+                byte[] record = converter.getBytes(entity);
+                if (record == null) throw new IOException("Entity " + entity.getId() + " can't be converted to binary");
+                out.writeInt(record.length);
+                out.write(record);
+            }
+            out.flush();
+            new DataOutputStream(file).writeLong(crc.getValue());
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param filepath  path of the snapshot file
+     * @param converter converter of the binary records to entities
+     * @return the snapshot, null if there's no snapshot file
+     * @throws IOException if reading the file failed, or it's not a whole snapshot
+     */
+    static <T extends Entity> Snapshot<T> read(String filepath, BinaryConverter<T> converter) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(Paths.get(filepath)));
+             DataInputStream in = new DataInputStream(new CheckedInputStream(file, crc))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a snapshot: " + filepath);
+            String marker = in.readUTF();
+            int count = in.readInt();
+            List<T> entities = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                T entity = converter.getEntity(ByteBuffer.wrap(record));
+                if (entity == null) throw new IOException("Record " + i + " of " + filepath + " can't be converted");
+                entities.add(entity);
+            }
+            if (new DataInputStream(file).readLong() != crc.getValue())
+                throw new IOException("Snapshot is corrupted: " + filepath);
+            return new Snapshot<>(marker, entities);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the statistics of a cache. counters are striped (LongAdder) and latencies go to lock free histograms,
+ * so recording from many threads doesn't make them contend
+ */
+class StatsCounter {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadsNotFound = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder lockAcquisitions = new LongAdder();
+    private final LongAdder lockContentions = new LongAdder();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LatencyHistogram notification = new LatencyHistogram();
+    private final Map<CacheStats.RepoCall, LatencyHistogram> repoLatency = new EnumMap<>(CacheStats.RepoCall.class);
+
+    StatsCounter() {
+        for (CacheStats.RepoCall call : CacheStats.RepoCall.values()) {
+            repoLatency.put(call, new LatencyHistogram());
+        }
+    }
+
+    void recordHits(int count) {
+        hits.add(count);
+    }
+
+    void recordMisses(int count) {
+        misses.add(count);
+    }
+
+    /**
+     * @param count    number of entities loaded from repo
+     * @param notFound number of them that don't exist in repo
+     * @param failures number of them repo failed to provide
+     */
+    void recordLoads(int count, int notFound, int failures) {
+        loads.add(count);
+        loadsNotFound.add(notFound);
+        loadFailures.add(failures);
+    }
+
+    /**
+     * @param waitNanos time waited for the lock, 0 if it was free
+     */
+    void recordLock(long waitNanos) {
+        lockAcquisitions.increment();
+        if (waitNanos == 0) return;
+        lockContentions.increment();
+        lockWait.record(waitNanos);
+    }
+
+    void recordNotification(long nanos) {
+        notification.record(nanos);
+    }
+
+    void recordRepoCall(CacheStats.RepoCall call, long nanos) {
+        repoLatency.get(call).record(nanos);
+    }
+
+    /**
+     * @param entryCount number of entries currently held in cache
+     * @return the statistics recorded so far
+     */
+    CacheStats snapshot(long entryCount) {
+        Map<CacheStats.RepoCall, LatencyHistogram.Summary> latencies = new EnumMap<>(CacheStats.RepoCall.class);
+        for (Map.Entry<CacheStats.RepoCall, LatencyHistogram> call : repoLatency.entrySet()) {
+            latencies.put(call.getKey(), call.getValue().summary());
+        }
+        return new CacheStats(hits.sum(), misses.sum(), loads.sum(), loadsNotFound.sum(), loadFailures.sum(),
+                entryCount, lockAcquisitions.sum(), lockContentions.sum(), lockWait.summary(), notification.summary(),
+                latencies);
+    }
+}
@@ -0,0 +1,171 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A subscriber for a cache
+ */
+public interface Subscriber<T extends Entity> {
+    /**
+     * get an entity cached
+     *
+     * @param eId id of the entity
+     * @return the entity required. null if not exists
+     */
+    T get(Integer eId);
+
+    /**
+     * add an entity to cache
+     *
+     * @param entity an entity to add
+     * @return true if added successfully false if already exits
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean add(T entity) throws RepoAccessException;
+
+    /**
+     * update an entity in cache
+     *
+     * @param entity an entity to update
+     * @return true if updated successfully false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean update(T entity) throws RepoAccessException;
+
+    /**
+     * remove an entity from cache
+     *
+     * @param entity an entity to remove
+     * @return true if removed successfully false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    boolean remove(T entity) throws RepoAccessException;
+
+    /**
+     * informing the Subscriber that changes in Cache occurred
+     *
+     * @param operation operation performed on cache
+     * @param entity    an entity modified
+     */
+    void inform(Cache.Operation operation, T entity);
+
+    /**
+     * get several entities cached, by default one by one
+     *
+     * @param eIds ids of the entities
+     * @return the entities that exist, in the order of the ids given
+     */
+    default ArrayList<T> getAll(Collection<Integer> eIds) {
+        ArrayList<T> entities = new ArrayList<>(eIds.size());
+        for (Integer eId : eIds) {
+            T entity = get(eId);
+            if (entity != null) entities.add(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * add several entities to cache, by default one by one
+     *
+     * @param entities entities to add
+     * @return for every entity, true if added successfully false if already exits
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    default boolean[] addAll(List<T> entities) throws RepoAccessException {
+        boolean[] added = new boolean[entities.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = add(entities.get(i));
+        }
+        return added;
+    }
+
+    /**
+     * update several entities in cache, by default one by one
+     *
+     * @param entities entities to update
+     * @return for every entity, true if updated successfully false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    default boolean[] updateAll(List<T> entities) throws RepoAccessException {
+        boolean[] updated = new boolean[entities.size()];
+        for (int i = 0; i < updated.length; i++) {
+            updated[i] = update(entities.get(i));
+        }
+        return updated;
+    }
+
+    /**
+     * remove several entities from cache, by default one by one
+     *
+     * @param entities entities to remove
+     * @return for every entity, true if removed successfully false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    default boolean[] removeAll(List<T> entities) throws RepoAccessException {
+        boolean[] removed = new boolean[entities.size()];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = remove(entities.get(i));
+        }
+        return removed;
+    }
+
+    /**
+     * get an entity cached, without boxing its id. by default its id is boxed
+     *
+     * @param eId id of the entity
+     * @return the entity required. null if not exists
+     */
+    default T get(int eId) {
+        return get(Integer.valueOf(eId));
+    }
+
+    /**
+     * remove an entity from cache by its id. by default the entity is read to be removed
+     *
+     * @param eId id of the entity to remove
+     * @return true if removed successfully false if not exists
+     * @throws RepoAccessException When the repo is not accessible
+     */
+    default boolean remove(int eId) throws RepoAccessException {
+        T entity = get(eId);
+        return entity != null && remove(entity);
+    }
+
+    /**
+     * get an entity cached along with its version
+     *
+     * @param eId id of the entity
+     * @return the entity and its version. null if not exists
+     * @throws UnsupportedOperationException if the subscriber doesn't support versioned updates
+     */
+    default Versioned<T> getVersioned(int eId) {
+        throw new UnsupportedOperationException("versioned reads are not supported");
+    }
+
+    /**
+     * update an entity in cache only if it wasn't written since it was read at the version given
+     *
+     * @param entity          an entity to update
+     * @param expectedVersion the version the entity was read at
+     * @return true if updated successfully false if written meanwhile or not exists
+     * @throws RepoAccessException           When the repo is not accessible
+     * @throws UnsupportedOperationException if the subscriber doesn't support versioned updates
+     */
+    default boolean compareAndUpdate(T entity, long expectedVersion) throws RepoAccessException {
+        throw new UnsupportedOperationException("versioned updates are not supported");
+    }
+
+    /**
+     * informing the Subscriber that a batch of changes in Cache occurred
+     *
+     * @param operation operation performed on cache
+     * @param entities  entities modified
+     */
+    default void informAll(Cache.Operation operation, List<T> entities) {
+        for (T entity : entities) {
+            inform(operation, entity);
+        }
+    }
+}
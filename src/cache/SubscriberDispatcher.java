@@ -0,0 +1,248 @@
+package cache;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the notifications of a cache to its subscribers asynchronously, so a write doesn't wait for them.
+ * Every subscriber has a bounded queue of notifications and a delivery thread that informs it in order.
+ * When a queue is full the backpressure policy decides what happens to a new notification.
+ *
+ * @param <T> An object that implements Entity
+ */
+class SubscriberDispatcher<T extends Entity> {
+    /**
+     * What happens to a notification of a subscriber whose queue is full
+     * BLOCK   the writer waits for room in the queue
+     * DROP    the notification is dropped
+     * COALESCE a notification of an entity already queued is merged into the queued one, so the subscriber is
+     * informed of its latest state only. otherwise the writer waits like BLOCK
+     */
+    enum Backpressure {
+        BLOCK, DROP, COALESCE
+    }
+
+    /**
+     * A notification waiting to be delivered, modified in place when coalesced
+     */
+    private static final class Notification<T> {
+        Cache.Operation operation; // null if cancelled by coalescing
+        T entity; // of a single entity notification
+        final List<T> entities; // of a batch notification, null if single
+
+        Notification(Cache.Operation operation, T entity, List<T> entities) {
+            this.operation = operation;
+            this.entity = entity;
+            this.entities = entities;
+        }
+    }
+
+    private final int capacity;
+    private final Backpressure backpressure;
+    private final Map<Subscriber<T>, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final StatsCounter stats;
+
+    /**
+     * @param capacity     maximum number of notifications queued per subscriber
+     * @param backpressure what happens to a notification of a subscriber whose queue is full
+     * @param stats        records the time subscribers take to handle the notifications
+     */
+    SubscriberDispatcher(int capacity, Backpressure backpressure, StatsCounter stats) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.backpressure = backpressure;
+        this.stats = stats;
+    }
+
+    /**
+     * start delivering notifications to a subscriber
+     */
+    void register(Subscriber<T> subscriber) {
+        mailboxes.computeIfAbsent(subscriber, Mailbox::new);
+    }
+
+    /**
+     * stop delivering notifications to a subscriber, the ones still queued are discarded
+     */
+    void unregister(Subscriber<T> subscriber) {
+        Mailbox mailbox = mailboxes.remove(subscriber);
+        if (mailbox != null) mailbox.close();
+    }
+
+    /**
+     * queue a notification of an entity to a subscriber registered
+     */
+    void dispatch(Subscriber<T> subscriber, Cache.Operation operation, T entity) {
+        Mailbox mailbox = mailboxes.get(subscriber);
+        if (mailbox != null) mailbox.offer(new Notification<>(operation, entity, null));
+    }
+
+    /**
+     * queue a notification of a batch of entities to a subscriber registered, a batch is never coalesced
+     */
+    void dispatchAll(Subscriber<T> subscriber, Cache.Operation operation, List<T> entities) {
+        Mailbox mailbox = mailboxes.get(subscriber);
+        if (mailbox != null) mailbox.offer(new Notification<>(operation, null, entities));
+    }
+
+    /**
+     * wait for the notifications queued so far to be delivered
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void drain() throws InterruptedException {
+        for (Mailbox mailbox : mailboxes.values()) {
+            mailbox.drain();
+        }
+    }
+
+    /**
+     * deliver the notifications queued and stop the delivery threads
+     *
+     * @throws InterruptedException if interrupted while waiting for the delivery
+     */
+    void close() throws InterruptedException {
+        drain();
+        for (Subscriber<T> subscriber : mailboxes.keySet()) {
+            unregister(subscriber);
+        }
+    }
+
+    /**
+     * @return number of notifications dropped by the DROP policy so far
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * The queue of a subscriber and the thread delivering it
+     */
+    private final class Mailbox implements Runnable {
+        private final Subscriber<T> subscriber;
+        private final Thread thread;
+        private final ArrayDeque<Notification<T>> queue = new ArrayDeque<>();
+        // single entity notifications queued, by entity id. used by COALESCE only
+        private final Map<Integer, Notification<T>> queued = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final Condition idle = lock.newCondition();
+        private boolean delivering;
+        private boolean closed;
+
+        Mailbox(Subscriber<T> subscriber) {
+            this.subscriber = subscriber;
+            this.thread = new Thread(this, "cache-subscriber");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void offer(Notification<T> notification) {
+            boolean single = notification.entities == null;
+            lock.lock();
+            try {
+                if (closed) return;
+                if (backpressure == Backpressure.COALESCE && single) {
+                    Notification<T> older = queued.get(notification.entity.getId());
+                    if (older != null) {
+                        older.operation = Cache.merge(older.operation, notification.operation);
+                        older.entity = notification.entity;
+                        if (older.operation == null) queued.remove(notification.entity.getId()); // cancelled
+                        return;
+                    }
+                }
+                // a subscriber writing to the cache from inform must not wait for its own delivery thread
+                while (queue.size() >= capacity && Thread.currentThread() != thread) {
+                    if (backpressure == Backpressure.DROP) {
+                        dropped.increment();
+                        return;
+                    }
+                    notFull.await();
+                    if (closed) return;
+                }
+                queue.add(notification);
+                if (backpressure == Backpressure.COALESCE && single)
+                    queued.put(notification.entity.getId(), notification);
+                notEmpty.signal();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // the notification is dropped
+                dropped.increment();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Notification<T> notification;
+                lock.lock();
+                try {
+                    while (queue.isEmpty() && !closed) {
+                        notEmpty.await();
+                    }
+                    if (closed) return;
+                    notification = queue.poll();
+                    if (notification.entities == null) queued.remove(notification.entity.getId(), notification);
+                    delivering = true;
+                    notFull.signal();
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+                long start = System.nanoTime();
+                try {
+                    if (notification.operation != null) {
+                        if (notification.entities == null)
+                            subscriber.inform(notification.operation, notification.entity);
+                        else
+                            subscriber.informAll(notification.operation, notification.entities);
+                        stats.recordNotification(System.nanoTime() - start);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Subscriber failed to handle a notification of " + notification.operation);
+                } finally {
+                    lock.lock();
+                    delivering = false;
+                    if (queue.isEmpty()) idle.signalAll();
+                    lock.unlock();
+                }
+            }
+        }
+
+        void drain() throws InterruptedException {
+            if (Thread.currentThread() == thread) return; // would wait for itself
+            lock.lock();
+            try {
+                while ((!queue.isEmpty() || delivering) && !closed) {
+                    idle.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                queue.clear();
+                queued.clear();
+                notEmpty.signalAll();
+                notFull.signalAll();
+                idle.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A subscriber registered to a cache along with its interest.
+ * A batched subscription buffers the changes of a time window, keeping the latest change per id only, and
+ * delivers them at the end of the window by a call to informAll per operation
+ *
+ * @param <T> An object that implements Entity
+ */
+class Subscription<T extends Entity> {
+    /**
+     * The latest change of an entity in the current window
+     */
+    private static final class Change<T> {
+        final Cache.Operation operation;
+        final T entity;
+
+        Change(Cache.Operation operation, T entity) {
+            this.operation = operation;
+            this.entity = entity;
+        }
+    }
+
+    final Subscriber<T> subscriber;
+    final Interest<T> interest;
+    // changes of the current window by id, null if not batched
+    private Map<Integer, Change<T>> delta;
+    private ScheduledFuture<?> flusher;
+    private boolean closed; // changes are not buffered anymore
+    // records the time the subscriber takes to handle a delta
+    private final StatsCounter stats;
+
+    Subscription(Subscriber<T> subscriber, Interest<T> interest, boolean batched, StatsCounter stats) {
+        this.subscriber = subscriber;
+        this.interest = interest;
+        this.delta = batched ? new LinkedHashMap<>() : null;
+        this.stats = stats;
+    }
+
+    boolean isBatched() {
+        return delta != null;
+    }
+
+    /**
+     * @param flusher the task delivering the deltas of this subscription, cancelled when it's closed
+     */
+    synchronized void setFlusher(ScheduledFuture<?> flusher) {
+        this.flusher = flusher;
+    }
+
+    /**
+     * buffer a change in the current window, merging it with a change of the same entity
+     *
+     * @param operation the operation that has been occurred
+     * @param entity    the entity modified
+     */
+    synchronized void buffer(Cache.Operation operation, T entity) {
+        if (closed) return;
+        Change<T> older = delta.get(entity.getId());
+        Cache.Operation merged = older == null ? operation : Cache.merge(older.operation, operation);
+        if (merged == null) delta.remove(entity.getId()); // the subscriber never knew of it
+        else delta.put(entity.getId(), new Change<>(merged, entity));
+    }
+
+    /**
+     * deliver the changes of the current window and start a new one
+     */
+    void flush() {
+        Map<Integer, Change<T>> changes;
+        synchronized (this) {
+            if (delta.isEmpty()) return;
+            changes = delta;
+            delta = new LinkedHashMap<>();
+        }
+        // every id has a single change, so the order between the operations doesn't matter
+        for (Cache.Operation operation : Cache.Operation.values()) {
+            List<T> entities = new ArrayList<>();
+            for (Change<T> change : changes.values()) {
+                if (change.operation == operation) entities.add(change.entity);
+            }
+            if (entities.isEmpty()) continue;
+            long start = System.nanoTime();
+            try {
+                subscriber.informAll(operation, entities);
+                stats.recordNotification(System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                System.err.println("Subscriber failed to handle a notification of " + operation);
+            }
+        }
+    }
+
+    /**
+     * stop buffering changes and delivering the deltas of this subscription, the changes buffered so far are
+     * delivered by a last flush
+     */
+    synchronized void close() {
+        closed = true;
+        if (flusher != null) flusher.cancel(false);
+    }
+}
@@ -0,0 +1,99 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The subscriptions of a cache, indexed by their interest so a change is routed only to the subscribers
+ * interested in it: interests in ids are found by the id, only ranges and predicates are checked one by one.
+ * Reads are lock free, registrations are expected to be rare
+ *
+ * @param <T> An object that implements Entity
+ */
+class Subscriptions<T extends Entity> {
+    // all subscriptions, in the order registered
+    private final CopyOnWriteArrayList<Subscription<T>> all = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Subscription<T>> everything = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<Subscription<T>>> byId = new ConcurrentHashMap<>();
+    // ranges and predicates
+    private final CopyOnWriteArrayList<Subscription<T>> scanned = new CopyOnWriteArrayList<>();
+
+    /**
+     * add a subscription, replacing the subscription of the same subscriber
+     *
+     * @return the subscription replaced, null if none
+     */
+    synchronized Subscription<T> add(Subscription<T> subscription) {
+        Subscription<T> replaced = remove(subscription.subscriber);
+        all.add(subscription);
+        switch (subscription.interest.getKind()) {
+            case ALL:
+                everything.add(subscription);
+                break;
+            case IDS:
+                for (int id : subscription.interest.getIds()) {
+                    byId.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>()).add(subscription);
+                }
+                break;
+            default:
+                scanned.add(subscription);
+        }
+        return replaced;
+    }
+
+    /**
+     * remove the subscription of a subscriber
+     *
+     * @return the subscription removed, null if the subscriber is not subscribed
+     */
+    synchronized Subscription<T> remove(Subscriber<T> subscriber) {
+        Subscription<T> subscription = get(subscriber);
+        if (subscription == null) return null;
+        all.remove(subscription);
+        everything.remove(subscription);
+        scanned.remove(subscription);
+        if (subscription.interest.getKind() == Interest.Kind.IDS) {
+            for (int id : subscription.interest.getIds()) {
+                byId.computeIfPresent(id, (k, subscriptions) -> {
+                    subscriptions.remove(subscription);
+                    return subscriptions.isEmpty() ? null : subscriptions;
+                });
+            }
+        }
+        return subscription;
+    }
+
+    /**
+     * @return the subscription of a subscriber, null if not subscribed
+     */
+    Subscription<T> get(Subscriber<T> subscriber) {
+        for (Subscription<T> subscription : all) {
+            if (subscription.subscriber == subscriber) return subscription;
+        }
+        return null;
+    }
+
+    /**
+     * @return all subscriptions, in the order registered
+     */
+    List<Subscription<T>> all() {
+        return all;
+    }
+
+    /**
+     * @param entity an entity modified
+     * @return the subscriptions interested in a change of the entity
+     */
+    List<Subscription<T>> matching(T entity) {
+        List<Subscription<T>> ids = byId.isEmpty() ? null : byId.get(entity.getId());
+        if (ids == null && scanned.isEmpty()) return everything; // no need to copy
+        List<Subscription<T>> matching = new ArrayList<>(everything);
+        if (ids != null) matching.addAll(ids);
+        for (Subscription<T> subscription : scanned) {
+            if (subscription.interest.matches(entity)) matching.add(subscription);
+        }
+        return matching;
+    }
+}
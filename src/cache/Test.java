@@ -0,0 +1,1185 @@
+package cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * A Unit test for the library
+ */
+public class Test {
+    private static final String basicDB = "db-basic";
+    private static final String persistentDB = "db-persistent";
+    private static final String readOnlyDB = "db-readOnly";
+
+    /**
+     * Resetting the repo to ensure clean testing
+     */
+    private static void resetRepo() {
+        PrintWriter pw;
+        try {
+            pw = new PrintWriter(basicDB);
+            pw.close();
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean addTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        Dog dog0 = new Dog(0, "Flaky", 100, 2, "Labrador");
+        Dog dog1 = new Dog(1, "Flay", 10, 20, "Pincher");
+        Cache<Dog> c;
+        Subscriber<Dog> a;
+        Subscriber<Dog> b;
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        if (!a.add(dog0)) return false;
+        if (a.get(dog0.getId()) == null) return false;
+        if (b.get(dog0.getId()) == null) return false; // check that b got what a inserted
+        if (!b.add(dog1)) return false;
+        if (a.get(dog1.getId()) == null) return false;
+
+        // duplicate testing
+        if (a.add(dog0)) return false;
+        if (b.add(dog1)) return false;        // indicate success in adding duplicate objects
+        c.unregister(a);
+        c.unregister(b);
+        return true;
+    }
+
+    private static boolean removeTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        // Test remove null
+        Cache<Dog> c;
+        Subscriber<Dog> a;
+        Subscriber<Dog> b;
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        Dog dog = new Dog(0, "Flaky", 100, 20, "Labrador");
+        if (a.remove(dog)) return false;
+        if (b.remove(dog)) return false;// indicate success in removing while the object not really there
+        // Test remove something
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        dog = new Dog(0, "Flaky", 100, 20, "Labrador");
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        if (!a.add(dog)) return false;
+        if (!b.remove(dog)) return false;
+        if (a.get(0) != null) return false;
+        return b.get(0) == null;
+    }
+
+    private static boolean updateLazyTest() throws RepoAccessException {
+        //test updating something not in cache but in repo
+        Cache<Dog> c = new Cache<>(new DemoRepo(persistentDB), Cache.Mode.LAZY, new DogConverter());
+        return c.update(new Dog(0, "Starky", 10, 35, "Amstaf"));
+    }
+
+    private static boolean updateTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c;
+        Subscriber<Dog> a;
+        Subscriber<Dog> b;
+        // test updating nothing
+        Dog dog = new Dog(2, "Starky", 10, 35, "Amstaf");
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        if (a.update(dog)) return false;
+        if (b.update(dog)) return false;
+        // test updating something
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        if (!a.add(dog)) return false;
+        dog = new Dog(dog.getId(), "My", 20, 50, "MyRace");
+        if (!b.update(dog)) return false; // updating not occurred
+        return dog.equals(c.get(dog.getId())); // updating not performed correctly
+    }
+
+    private static boolean getTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        // test get nothing
+        Cache<Dog> c;
+        Subscriber<Dog> a;
+        Subscriber<Dog> b;
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        if (a.get(0) != null) return false;
+        if (b.get(0) != null) return false;
+        // test get something
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        Dog dog = new Dog(2, "Starky", 10, 35, "Amstaf");
+        if (!a.add(dog)) return false;
+        return b.get(dog.getId()) != null;
+    }
+
+    //Test that an existing repo (full with entries) functionality
+    private static boolean persistentDBTest(Cache.Mode mode) throws RepoAccessException {
+        DemoRepo repo = new DemoRepo(persistentDB);
+        Cache<Dog> c;
+        Subscriber<Dog> a;
+        Subscriber<Dog> b;
+        c = new Cache<>(repo, mode, new DogConverter());
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        if (a.get(0) == null) return false;
+        if (b.get(0) == null) return false;
+        Dog dog = new Dog(2, "Starky", 10, 35, "Amstaf");
+        a = new User<>("User A", c);
+        b = new User<>("User B", c);
+        if (a.add((dog))) return false;
+        if (b.add((dog))) return false;
+        int id = repo.getMaxId() + 1;
+        dog = new Dog(id, "Starky", 10, 35, "Amstaf");
+        if (!a.add(dog)) return false;
+        dog = new Dog(dog.getId(), "My", 20, 40, "MyRace");
+        if (!b.update(dog)) return false;
+        return dog.equals(c.get(dog.getId()));
+    }
+
+    private static boolean consistentTest(Cache.Mode mode) throws RepoAccessException {
+        boolean flag = true;
+        File f = new File(readOnlyDB);
+        if (!f.setWritable(true)) {
+            System.out.println("Consistent Test CORRUPTED!!!"); // corner case when the file of the test corrupted
+        }
+        Cache<Dog> c;
+        Subscriber<Dog> a;
+        Subscriber<Dog> b;
+        Dog dog;
+        c = new Cache<>(new DemoRepo(readOnlyDB), mode, new DogConverter());
+        b = new User<>("User B", c);
+        a = new User<>("User A", c);
+        if (!f.setReadOnly()) {
+            System.out.println("Consistent Test CORRUPTED!!!"); // corner case when the file of the test corrupted
+        }
+        dog = a.get(0);
+        try {
+            if (b.update(new Dog(dog.getId(), "My", 5, 5, "My")))
+                flag = false;
+        } catch (RepoAccessException ignored) {
+            // exception is expected to be thrown because of the file is not writable
+        }
+        if (!dog.equals(c.get(0))) flag = false; // ensures that the update DOES NOT performed on cache
+        if (!f.setWritable(true)) {
+            System.out.println("Consistent Test CORRUPTED!!!"); // corner case when the file of the test corrupted
+        }
+        return flag;
+    }
+
+    private static boolean threadSafeTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        Subscriber<Dog> a = new User<>("User A", c);
+        Subscriber<Dog> b = new User<>("User B", c);
+        // User A inserting an OLD dog
+        if (!a.add(new Dog(0, "old", 10, 20, "a"))) return false;
+        MyThreadA threadA = new MyThreadA(a);
+        MyThreadB threadB = new MyThreadB(b);
+        threadA.start(); // User A updating cached dog to NEW in 10ms
+        threadB.start(); // User B get cached dog in 100ms --- ENSURES HE GETS THE UPDATED ONE (By isPassed method)!!
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return threadB.isPassed();
+    }
+
+    private static boolean stripedLockTest(Cache.Mode mode) throws RepoAccessException, InterruptedException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        if (!c.add(new Dog(0, "shared", 0, 0, "a"))) return false;
+        int threads = 8;
+        int writes = 50;
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int id = 1; id <= threads; id++) {
+            int own = id;
+            // every thread writes an id of its own and the id shared by all of them
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                    if (!c.add(new Dog(own, "own", 0, 0, "a"))) failed.set(true);
+                    for (int i = 1; i <= writes; i++) {
+                        if (!c.update(new Dog(own, "own", i, 0, "a"))) failed.set(true);
+                        if (!c.update(new Dog(0, "shared", own, i, "a"))) failed.set(true);
+                    }
+                } catch (RepoAccessException | InterruptedException e) {
+                    failed.set(true);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        if (failed.get()) return false;
+        // the cache holds the last write of every id, and so does repo
+        Cache<Dog> reloaded = new Cache<>(new DemoRepo(basicDB), Cache.Mode.EAGER, new DogConverter());
+        for (int id = 0; id <= threads; id++) {
+            if (!Objects.equals(c.get(id), reloaded.get(id))) return false;
+            if (id > 0 && !new Dog(id, "own", writes, 0, "a").equals(c.get(id))) return false;
+        }
+        return c.get(0).getWeight() == writes && reloaded.size() == threads + 1;
+    }
+
+    private static boolean singleFlightTest() throws RepoAccessException, InterruptedException {
+        resetRepo();
+        AtomicInteger finds = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        EntityRepository<Dog> repo = new JsonRepository<>(new DemoRepo(basicDB), new DogConverter()) {
+            @Override
+            public Dog find(int id) throws RepoAccessException {
+                finds.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS); // holds the load until all the readers wait for it
+                } catch (InterruptedException e) {
+                    throw new RepoAccessException();
+                }
+                return super.find(id);
+            }
+        };
+        Dog dog = new Dog(0, "Lazy", 10, 20, "a");
+        if (repo.add(dog) != RepositoryProvider.ReturnSate.SUCCESS) return false;
+        Cache<Dog> c = new Cache<>(repo, Cache.Mode.LAZY);
+        int readers = 8;
+        Dog[] read = new Dog[readers];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            int reader = i;
+            Thread thread = new Thread(() -> read[reader] = c.get(0));
+            thread.start();
+            threads.add(thread);
+        }
+        for (int i = 0; i < 250 && finds.get() == 0; i++) Thread.sleep(20);
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Dog entity : read) {
+            if (!dog.equals(entity)) return false;
+        }
+        // the readers that missed while the load was in flight waited for it
+        return finds.get() == 1 && c.stats().loads == 1;
+    }
+
+    private static boolean boundedTest() throws RepoAccessException {
+        final int maxEntries = 5;
+        DemoRepo repo = new DemoRepo(persistentDB);
+        Cache<Dog> c = new Cache<>(repo, Cache.Mode.BOUNDED, new DogConverter(), maxEntries);
+        Subscriber<Dog> a = new User<>("User A", c);
+        // the hot entity is read twice so it's protected from the scan below
+        if (a.get(0) == null || a.get(0) == null) return false;
+        for (int id = 1; id <= repo.getMaxId(); id++) {
+            if (a.get(id) == null) return false;
+            if (c.size() > maxEntries) return false;
+        }
+        if (c.getIfPresent(0) == null) return false;
+        // evicted entities are reloaded from repo
+        if (a.get(1) == null) return false;
+        if (!a.update(new Dog(1, "Stark", 26, 40, "Amstaf"))) return false;
+        return a.get(0) != null && c.size() <= maxEntries;
+    }
+
+    private static boolean membershipFilterTest() throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        Subscriber<Dog> a = new User<>("User A", c);
+        Dog dog = new Dog(0, "Flaky", 100, 2, "Labrador");
+        if (!a.add(dog)) return false;
+        c.enableMembershipFilter(100, 0.01);
+        if (a.get(dog.getId()) == null) return false;
+        for (int id = 1; id < 100; id++) {
+            if (a.get(id) != null) return false;
+        }
+        if (c.filterFalsePositiveRate() > 0.1) return false;
+        dog = new Dog(1, "Flay", 10, 20, "Pincher");
+        if (!a.add(dog)) return false;
+        if (a.get(dog.getId()) == null) return false;
+        if (!a.remove(dog)) return false;
+        return a.get(dog.getId()) == null && !a.update(dog);
+    }
+
+    private static boolean expiryTest(Cache.Mode mode) throws RepoAccessException, InterruptedException {
+        resetRepo();
+        DogConverter converter = new DogConverter();
+        DemoRepo otherProcess = new DemoRepo(basicDB); // changes the repo behind the cache's back
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), mode, converter);
+        Subscriber<Dog> a = new User<>("User A", c);
+        Dog dog = new Dog(0, "old", 10, 20, "a");
+        if (!a.add(dog)) return false;
+        c.expireAfterWrite(50, TimeUnit.MILLISECONDS);
+        Dog changed = new Dog(0, "new", 20, 30, "b");
+        otherProcess.update(converter.getJson(changed));
+        if (!dog.equals(a.get(0))) return false;
+        Thread.sleep(100);
+        if (!changed.equals(a.get(0))) return false; // expired and reloaded
+        // refresh-ahead returns the cached entity and reloads it in the background
+        c.expireAfterWrite(10, TimeUnit.SECONDS);
+        c.refreshAfterWrite(20, TimeUnit.MILLISECONDS);
+        dog = new Dog(0, "newer", 30, 40, "c");
+        otherProcess.update(converter.getJson(dog));
+        Thread.sleep(50);
+        if (!changed.equals(a.get(0))) return false;
+        Thread.sleep(200);
+        return dog.equals(a.get(0));
+    }
+
+    private static boolean repoFailureTest() throws RepoAccessException, InterruptedException {
+        resetRepo();
+        AtomicBoolean failing = new AtomicBoolean();
+        EntityRepository<Dog> repo = new JsonRepository<>(new DemoRepo(basicDB), new DogConverter()) {
+            @Override
+            public Dog find(int id) throws RepoAccessException {
+                if (failing.get()) throw new RepoAccessException();
+                return super.find(id);
+            }
+        };
+        Cache<Dog> c = new Cache<>(repo, Cache.Mode.EAGER);
+        if (!c.add(new Dog(0, "Flaky", 100, 2, "Labrador"))) return false;
+        c.expireAfterWrite(20, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+        // the expired entity can't be reloaded, but it's not taken as removed from repo
+        failing.set(true);
+        if (c.get(0) == null || c.size() != 1 || c.stats().loadFailures != 1 || c.stats().loadsNotFound != 0)
+            return false;
+        failing.set(false);
+        return c.get(0) != null && c.remove(0);
+    }
+
+    private static boolean repoBugTest() throws RepoAccessException {
+        resetRepo();
+        AtomicBoolean failing = new AtomicBoolean();
+        EntityRepository<Dog> repo = new JsonRepository<>(new DemoRepo(basicDB), new DogConverter()) {
+            @Override
+            public RepositoryProvider.ReturnSate update(Dog entity) {
+                if (failing.get()) throw new IllegalStateException("bug");
+                return super.update(entity);
+            }
+        };
+        Cache<Dog> c = new Cache<>(repo, Cache.Mode.EAGER);
+        if (!c.add(new Dog(0, "Buggy", 100, 2, "Labrador"))) return false;
+        failing.set(true);
+        try {
+            c.update(new Dog(0, "Lost", 100, 2, "Labrador"));
+            return false;
+        } catch (IllegalStateException e) {
+            // thrown by repo
+        }
+        failing.set(false);
+        // the lock of the entity was released by the failed update
+        CompletableFuture<Boolean> update = CompletableFuture.supplyAsync(() -> {
+            try {
+                return c.update(new Dog(0, "Fixed", 100, 2, "Labrador"));
+            } catch (RepoAccessException e) {
+                return false;
+            }
+        });
+        try {
+            return update.get(5, TimeUnit.SECONDS) && c.get(0).getName().equals("Fixed");
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private static boolean logRepoTest() throws RepoAccessException, IOException, JSONException {
+        File log = File.createTempFile("db-log", null);
+        log.deleteOnExit();
+        LogRepo repo = new LogRepo(log.getPath());
+        Cache<Dog> c = new Cache<>(repo, Cache.Mode.LAZY, new DogConverter());
+        Subscriber<Dog> a = new User<>("User A", c);
+        for (int id = 0; id < 10; id++) {
+            if (!a.add(new Dog(id, "old", 10, 20, "a"))) return false;
+            if (!a.update(new Dog(id, "new", 20, 30, "b"))) return false;
+        }
+        if (!a.remove(new Dog(9, "new", 20, 30, "b"))) return false;
+        long sizeBefore = log.length();
+        repo.compact();
+        if (log.length() >= sizeBefore) return false;
+        // reopening replays the log
+        c = new Cache<>(new LogRepo(log.getPath()), Cache.Mode.EAGER, new DogConverter());
+        a = new User<>("User A", c);
+        for (int id = 0; id < 9; id++) {
+            if (!new Dog(id, "new", 20, 30, "b").equals(a.get(id))) return false;
+        }
+        return a.get(9) == null && c.size() == 9;
+    }
+
+    private static boolean externalModificationTest() throws IOException, InterruptedException {
+        DogConverter converter = new DogConverter();
+        Path db = Files.createTempFile("db-external", "");
+        try {
+            Files.writeString(db, converter.getJson(new Dog(0, "aaaa", 1, 1, "race")) + "\n" +
+                    converter.getJson(new Dog(1, "bbbb", 1, 1, "race")) + "\n");
+            DemoRepo repo = new DemoRepo(db.toString());
+            if (repo.getAll(Arrays.asList(0, 1)).size() != 2) return false;
+            // rewritten by someone else to the same size, with lines of other lengths
+            Files.writeString(db, converter.getJson(new Dog(0, "a", 1, 1, "race")) + "\n" +
+                    converter.getJson(new Dog(1, "bbbbbbb", 1, 1, "race")) + "\n");
+            CompletableFuture<ArrayList<JSONObject>> all =
+                    CompletableFuture.supplyAsync(() -> repo.getAll(Arrays.asList(0, 1)));
+            ArrayList<JSONObject> jsonObjects = all.get(5, TimeUnit.SECONDS);
+            return jsonObjects.size() == 2 && repo.get(1).optString("name").equals("bbbbbbb");
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        } finally {
+            Files.delete(db);
+        }
+    }
+
+    private static boolean mappedRepoTest() throws RepoAccessException, IOException {
+        File file = File.createTempFile("db-mapped", null);
+        file.deleteOnExit();
+        Files.copy(Path.of(persistentDB), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        int entries = new DemoRepo(file.getPath()).getAll().size();
+        MappedRepo repo = new MappedRepo(file.getPath());
+        Cache<Dog> c = new Cache<>(repo, Cache.Mode.EAGER, new DogConverter());
+        Subscriber<Dog> a = new User<>("User A", c);
+        if (c.size() != entries) return false;
+        Dog dog = new Dog(entries + 1000, "Starky", 10, 35, "Amstaf");
+        if (!a.add(dog)) return false;
+        if (!a.update(new Dog(0, "A much longer name than before", 10, 35, "Amstaf"))) return false;
+        if (!a.update(new Dog(1, "S", 26, 40, "Amstaf"))) return false;
+        if (!a.remove(a.get(2))) return false;
+        try (Stream<JSONObject> jsonObjects = repo.stream()) {
+            if (jsonObjects.filter(jsonObject -> jsonObject.optInt("id") == 1).count() != 1) return false;
+        }
+        if (repo.getAll().size() != entries) return false;
+        repo.close();
+        // the file is left in DemoRepo's format
+        c = new Cache<>(new DemoRepo(file.getPath()), Cache.Mode.EAGER, new DogConverter());
+        a = new User<>("User A", c);
+        return c.size() == entries && dog.equals(a.get(dog.getId())) && a.get(2) == null &&
+                a.get(0).getName().startsWith("A much") && a.get(1).getName().equals("S") && a.get(3) != null;
+    }
+
+    private static boolean binaryRepoTest(Cache.Mode mode) throws RepoAccessException, IOException {
+        File file = File.createTempFile("db-binary", null);
+        file.deleteOnExit();
+        BinaryRepo<Dog> repo = new BinaryRepo<>(file.getPath(), new DogBinaryConverter());
+        Cache<Dog> c = new Cache<>(repo, mode);
+        Subscriber<Dog> a = new User<>("User A", c);
+        for (int id = 0; id < 10; id++) {
+            if (!a.add(new Dog(id, "old", 10, 20, "a"))) return false;
+        }
+        if (a.add(new Dog(0, "old", 10, 20, "a"))) return false;
+        if (!a.update(new Dog(0, "new", 20, 30, null))) return false;
+        if (!a.remove(new Dog(9, "old", 10, 20, "a"))) return false;
+        if (a.update(new Dog(9, "new", 20, 30, "b"))) return false;
+        long sizeBefore = file.length();
+        repo.compact();
+        if (file.length() >= sizeBefore || !a.update(new Dog(1, "old", 10, 20, "a"))) return false;
+        // reopening replays the file
+        c = new Cache<>(new BinaryRepo<>(file.getPath(), new DogBinaryConverter()), Cache.Mode.EAGER);
+        a = new User<>("User A", c);
+        Dog dog = a.get(0);
+        return c.size() == 9 && dog.getName().equals("new") && dog.getRace() == null && a.get(9) == null &&
+                new Dog(1, "old", 10, 20, "a").equals(a.get(1));
+    }
+
+    private static boolean subscriberDefaultsTest() throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        // a subscriber written before the bulk and int keyed operations, implementing none of them
+        Subscriber<Dog> a = new Subscriber<>() {
+            @Override
+            public Dog get(Integer eId) {
+                return c.get(eId);
+            }
+
+            @Override
+            public boolean add(Dog entity) throws RepoAccessException {
+                return c.add(entity);
+            }
+
+            @Override
+            public boolean update(Dog entity) throws RepoAccessException {
+                return c.update(entity);
+            }
+
+            @Override
+            public boolean remove(Dog entity) throws RepoAccessException {
+                return c.remove(entity);
+            }
+
+            @Override
+            public void inform(Cache.Operation operation, Dog entity) {
+            }
+        };
+        List<Dog> dogs = List.of(new Dog(0, "old", 10, 20, "a"), new Dog(1, "old", 10, 20, "a"));
+        if (!Arrays.equals(a.addAll(dogs), new boolean[]{true, true})) return false;
+        if (!Arrays.equals(a.updateAll(List.of(new Dog(1, "new", 10, 20, "a"), new Dog(2, "new", 10, 20, "a"))),
+                new boolean[]{true, false}))
+            return false;
+        if (a.getAll(List.of(0, 1, 2)).size() != 2 || !a.getAll(List.of(1)).get(0).getName().equals("new"))
+            return false;
+        if (!a.get(1).getName().equals("new") || !a.remove(1) || a.remove(1)) return false;
+        return Arrays.equals(a.removeAll(dogs), new boolean[]{true, false}) && c.get(0) == null;
+    }
+
+    private static boolean bulkTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        Subscriber<Dog> a = new User<>("User A", c);
+        Subscriber<Dog> b = new User<>("User B", c);
+        List<Dog> dogs = new ArrayList<>();
+        for (int id = 0; id < 5; id++) {
+            dogs.add(new Dog(id, "old", 10, 20, "a"));
+        }
+        if (!Arrays.equals(a.addAll(dogs), new boolean[]{true, true, true, true, true})) return false;
+        if (!Arrays.equals(b.addAll(dogs.subList(0, 2)), new boolean[]{false, false})) return false;
+        List<Dog> updated = List.of(new Dog(1, "new", 20, 30, "b"), new Dog(3, "new", 20, 30, "b"),
+                new Dog(7, "new", 20, 30, "b"));
+        if (!Arrays.equals(b.updateAll(updated), new boolean[]{true, true, false})) return false;
+        if (!Arrays.equals(a.removeAll(List.of(dogs.get(0), dogs.get(4), dogs.get(4))),
+                new boolean[]{true, true, false})) return false;
+        // a fresh cache sees what the batches wrote to the repo
+        c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        a = new User<>("User A", c);
+        List<Dog> found = a.getAll(List.of(0, 1, 2, 3, 4, 7));
+        return found.size() == 3 && updated.get(0).equals(found.get(0)) && dogs.get(2).equals(found.get(1)) &&
+                updated.get(1).equals(found.get(2));
+    }
+
+    private static boolean writeBehindTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), mode, new DogConverter());
+        c.enableWriteBehind(1, TimeUnit.HOURS, 3);
+        Subscriber<Dog> a = new User<>("User A", c);
+        Dog added = new Dog(10, "added", 10, 20, "a");
+        Dog updated = new Dog(10, "updated", 20, 30, "b");
+        if (!a.add(added) || !a.update(updated) || a.add(added)) return false;
+        if (!a.add(new Dog(11, "removed", 10, 20, "a")) || !a.remove(new Dog(11, "removed", 10, 20, "a")))
+            return false;
+        // nothing is written yet, while the cache already serves the writes
+        DemoRepo repo = new DemoRepo(basicDB);
+        if (repo.get(10) != null || !updated.equals(a.get(10)) || a.get(11) != null) return false;
+        c.flush();
+        repo = new DemoRepo(basicDB);
+        if (repo.get(11) != null || !updated.equals(new DogConverter().getEntity(repo.get(10)))) return false;
+        // after close writes are written through
+        c.close();
+        return a.remove(updated) && new DemoRepo(basicDB).get(10) == null;
+    }
+
+    private static boolean writeBehindDroppedTest() throws RepoAccessException, InterruptedException {
+        resetRepo();
+        AtomicBoolean failing = new AtomicBoolean();
+        EntityRepository<Dog> repo = new JsonRepository<>(new DemoRepo(basicDB), new DogConverter()) {
+            @Override
+            public RepositoryProvider.ReturnSate update(Dog entity) {
+                return failing.get() ? RepositoryProvider.ReturnSate.FAILURE : super.update(entity);
+            }
+
+            @Override
+            public ArrayList<RepositoryProvider.ReturnSate> updateAll(List<Dog> entities) {
+                if (!failing.get()) return super.updateAll(entities);
+                ArrayList<RepositoryProvider.ReturnSate> failed = new ArrayList<>();
+                for (int i = 0; i < entities.size(); i++) failed.add(RepositoryProvider.ReturnSate.FAILURE);
+                return failed;
+            }
+        };
+        Cache<Dog> c = new Cache<>(repo, Cache.Mode.LAZY);
+        Dog dog = new Dog(10, "written", 10, 20, "a");
+        if (!c.add(dog)) return false;
+        c.enableWriteBehind(10, TimeUnit.MILLISECONDS, 1);
+        failing.set(true);
+        if (!c.update(new Dog(10, "lost", 20, 30, "b"))) return false;
+        // once dropped, the entity in repo is served again
+        for (int i = 0; i < 500 && !dog.equals(c.get(10)); i++) Thread.sleep(10);
+        if (!dog.equals(c.get(10))) return false;
+        try {
+            c.flush();
+            return false;
+        } catch (RepoAccessException e) {
+            // reported once
+        }
+        failing.set(false);
+        c.flush();
+        c.close();
+        return true;
+    }
+
+    private static boolean asyncTest(Cache.Mode mode) throws RepoAccessException {
+        resetRepo();
+        AtomicInteger repoCalls = new AtomicInteger();
+        Executor counting = task -> {
+            repoCalls.incrementAndGet();
+            VirtualThreads.executor().execute(task);
+        };
+        AsyncRepositoryProvider async = AsyncRepositoryProvider.of(new DemoRepo(basicDB), counting);
+        // not the view of(...) gives, so the calls of the cache wait for the futures of the repo
+        AsyncRepositoryProvider repo = new AsyncRepositoryProvider() {
+            @Override
+            public CompletableFuture<JSONObject> get(Integer id) {
+                return async.get(id);
+            }
+
+            @Override
+            public CompletableFuture<ArrayList<JSONObject>> getAll() {
+                return async.getAll();
+            }
+
+            @Override
+            public CompletableFuture<RepositoryProvider.ReturnSate> add(JSONObject jsonObject) {
+                return async.add(jsonObject);
+            }
+
+            @Override
+            public CompletableFuture<RepositoryProvider.ReturnSate> update(JSONObject jsonObject) {
+                return async.update(jsonObject);
+            }
+
+            @Override
+            public CompletableFuture<RepositoryProvider.ReturnSate> remove(JSONObject jsonObject) {
+                return async.remove(jsonObject);
+            }
+        };
+        AsyncCache<Dog> c = new AsyncCache<>(new Cache<>(repo.toBlocking(), mode, new DogConverter()));
+        Dog dog = new Dog(10, "async", 10, 20, "a");
+        Dog updated = new Dog(10, "updated", 20, 30, "b");
+        if (!c.addAsync(dog).join() || c.addAsync(dog).join() || !c.updateAsync(updated).join()) return false;
+        // many lookups in flight at once, none of them holds a caller thread
+        List<CompletableFuture<Dog>> lookups = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lookups.add(c.getAsync(i % 20));
+        }
+        CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).join();
+        for (int i = 0; i < lookups.size(); i++) {
+            if ((i % 20 == 10) != updated.equals(lookups.get(i).join())) return false;
+        }
+        // the misses of LAZY mode reached the repo asynchronously too
+        if (repoCalls.get() < (mode == Cache.Mode.LAZY ? 22 : 2)) return false;
+        return c.removeAsync(updated).join() && !c.removeAsync(updated).join() && repo.get(10).join() == null;
+    }
+
+    private static boolean asyncStatsTest() throws RepoAccessException {
+        resetRepo();
+        new DemoRepo(basicDB).add(new DogConverter().getJson(new Dog(0, "async", 10, 20, "a")));
+        Cache<Dog> cache = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        AsyncCache<Dog> c = new AsyncCache<>(cache);
+        // a miss loaded asynchronously is a single miss, its following read a hit
+        if (c.getAsync(0).join() == null || cache.stats().misses != 1 || cache.stats().hits != 0) return false;
+        return c.getAsync(0).join() != null && cache.stats().misses == 1 && cache.stats().hits == 1;
+    }
+
+    private static boolean asyncNotificationsTest(SubscriberDispatcher.Backpressure backpressure)
+            throws RepoAccessException, InterruptedException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        List<String> informed = new ArrayList<>();
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Subscriber<Dog> slow = new User<>("Slow", c) {
+            @Override
+            public void inform(Cache.Operation operation, Dog entity) {
+                delivering.countDown();
+                try {
+                    release.await(); // a subscriber slower than every write
+                } catch (InterruptedException ignored) {
+                }
+                informed.add(operation + " " + entity.getName());
+            }
+        };
+        c.enableAsyncNotifications(2, backpressure);
+        // writes don't wait for the subscriber, even once its queue is full (unless blocked)
+        c.add(new Dog(10, "a", 10, 20, "a"));
+        delivering.await();
+        c.update(new Dog(10, "b", 10, 20, "a"));
+        c.update(new Dog(10, "c", 10, 20, "a"));
+        if (backpressure != SubscriberDispatcher.Backpressure.BLOCK) c.add(new Dog(11, "d", 10, 20, "a"));
+        release.countDown();
+        c.awaitNotifications();
+        c.unregister(slow);
+        switch (backpressure) {
+            case DROP: // the first is being delivered, two are queued and the last is dropped
+                return informed.equals(List.of("ADD a", "UPDATE b", "UPDATE c")) && c.droppedNotifications() == 1;
+            case COALESCE: // the updates of 10 are merged in the queue
+                return informed.equals(List.of("ADD a", "UPDATE c", "ADD d"));
+            default:
+                return informed.equals(List.of("ADD a", "UPDATE b", "UPDATE c"));
+        }
+    }
+
+    /**
+     * a user that records what it's informed of
+     */
+    private static User<Dog> recorder(String name, Cache<Dog> c, List<String> informed) {
+        return new User<>(name, c) {
+            @Override
+            public void inform(Cache.Operation operation, Dog entity) {
+                informed.add(operation + " " + entity.getId());
+            }
+
+            @Override
+            public void informAll(Cache.Operation operation, List<Dog> entities) {
+                informed.add(operation + " " + ids(entities));
+            }
+        };
+    }
+
+    private static String ids(List<Dog> dogs) {
+        StringBuilder ids = new StringBuilder();
+        for (Dog dog : dogs) {
+            ids.append(ids.length() == 0 ? "" : ",").append(dog.getId());
+        }
+        return ids.toString();
+    }
+
+    private static boolean interestTest() throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        List<String> byIds = new ArrayList<>(), byRange = new ArrayList<>(), byName = new ArrayList<>();
+        List<String> deltas = new ArrayList<>();
+        c.register(recorder("Ids", c, byIds), Interest.ids(1, 2));
+        c.register(recorder("Range", c, byRange), Interest.range(10, 19));
+        c.register(recorder("Name", c, byName), Interest.<Dog>matching(dog -> dog.getName().startsWith("x")));
+        c.register(recorder("Delta", c, deltas), Interest.all(), 1, TimeUnit.HOURS);
+        c.add(new Dog(1, "a", 10, 20, "a"));
+        c.add(new Dog(10, "x", 10, 20, "a"));
+        c.update(new Dog(10, "y", 10, 20, "a"));
+        c.addAll(List.of(new Dog(2, "x", 10, 20, "a"), new Dog(11, "b", 10, 20, "a"), new Dog(30, "c", 10, 20, "a")));
+        c.remove(new Dog(1, "a", 10, 20, "a"));
+        c.update(new Dog(30, "d", 10, 20, "a"));
+        if (!byIds.equals(List.of("ADD 1", "ADD 2", "REMOVE 1"))) return false;
+        if (!byRange.equals(List.of("ADD 10", "UPDATE 10", "ADD 11"))) return false;
+        if (!byName.equals(List.of("ADD 10", "ADD 2"))) return false;
+        // nothing is delivered before the window ends, then only the latest change per id (1 was added and removed)
+        if (!deltas.isEmpty()) return false;
+        c.close();
+        return deltas.equals(List.of("ADD 10,2,11,30"));
+    }
+
+    private static boolean deltaCloseTest() throws RepoAccessException, InterruptedException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        List<String> deltas = Collections.synchronizedList(new ArrayList<>());
+        c.register(recorder("Delta", c, deltas), Interest.all(), 20, TimeUnit.MILLISECONDS);
+        c.add(new Dog(1, "a", 10, 20, "a"));
+        for (int i = 0; i < 250 && deltas.isEmpty(); i++) Thread.sleep(20);
+        c.add(new Dog(2, "b", 10, 20, "a"));
+        c.close(); // delivers the last delta
+        c.add(new Dog(3, "c", 10, 20, "a"));
+        Thread.sleep(100);
+        // nothing is delivered after close, by the periodic flush or otherwise
+        return deltas.equals(List.of("ADD 1", "ADD 2"));
+    }
+
+    private static boolean offHeapTest(Cache.Mode mode) throws RepoAccessException, InterruptedException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new JsonRepository<>(new DemoRepo(basicDB), new DogConverter()), mode,
+                new OffHeapStore<>(new DogBinaryConverter(), 1));
+        Dog dog = new Dog(10, "off", 10, 20, "a");
+        Dog updated = new Dog(10, "heap", 20, 30, "b");
+        if (!c.add(dog) || !c.add(new Dog(11, "other", 10, 20, "a")) || !c.update(updated)) return false;
+        if (!updated.equals(c.get(10)) || !updated.equals(c.get(10)) || c.size() != 2) return false;
+        if (!c.remove(updated) || c.get(10) != null || c.size() != 1) return false;
+        // freed slots are reused by the records written after them
+        OffHeapStore<Dog> store = new OffHeapStore<>(new DogBinaryConverter(), 0, 4096);
+        for (int id = 0; id < 1000; id++) {
+            store.put(id, new CacheEntry<>(new Dog(id, "dog", id, id, "race")));
+        }
+        long allocated = store.offHeapBytes();
+        for (int id = 0; id < 1000; id += 2) {
+            store.remove(id);
+        }
+        for (int id = 0; id < 1000; id += 2) {
+            store.put(id, new CacheEntry<>(new Dog(id, "new", id, id, "race")));
+        }
+        for (int id = 0; id < 1000; id++) {
+            CacheEntry<Dog> entry = store.get(id);
+            if (entry == null || !entry.entity.equals(new Dog(id, id % 2 == 0 ? "new" : "dog", id, id, "race")))
+                return false;
+        }
+        if (store.size() != 1000 || store.offHeapBytes() != allocated) return false;
+        // an entry due for a refresh is refreshed once, though every get decodes a new copy of it
+        Cache<Dog> refreshed = new Cache<>(new JsonRepository<>(new DemoRepo(basicDB), new DogConverter()), mode,
+                new OffHeapStore<>(new DogBinaryConverter(), 0));
+        refreshed.refreshAfterWrite(200, TimeUnit.MILLISECONDS);
+        if (refreshed.get(11) == null) return false;
+        Thread.sleep(250);
+        long loads = refreshed.stats().repoLatency.get(CacheStats.RepoCall.GET).count;
+        for (int i = 0; i < 1000; i++) refreshed.get(11);
+        Thread.sleep(50);
+        return refreshed.stats().repoLatency.get(CacheStats.RepoCall.GET).count - loads <= 2;
+    }
+
+    private static boolean intStoreTest() throws RepoAccessException {
+        // tombstones left by removes are dropped when the tables are rebuilt
+        IntHashStore<String> store = new IntHashStore<>();
+        for (int round = 0; round < 3; round++) {
+            for (int id = -5000; id < 5000; id++) {
+                store.put(id, "v" + id);
+            }
+            for (int id = -5000; id < 5000; id += 2) {
+                if (!("v" + id).equals(store.remove(id))) return false;
+            }
+        }
+        for (int id = -5000; id < 5000; id++) {
+            if (!Objects.equals(store.get(id), id % 2 == 0 ? null : "v" + id)) return false;
+        }
+        if (store.size() != 5000 || store.remove(0) != null) return false;
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        Subscriber<Dog> a = new User<>("User A", c);
+        Dog dog = new Dog(1000, "int", 10, 20, "a");
+        return a.add(dog) && dog.equals(a.get(1000)) && a.remove(1000) && !a.remove(1000) && a.get(1000) == null;
+    }
+
+    private static boolean warmUpTest() throws RepoAccessException, IOException {
+        Path db = Files.createTempFile("db-warm-up", "");
+        try (PrintWriter pw = new PrintWriter(db.toFile())) {
+            for (int id = 0; id < 20000; id++) {
+                pw.println(new DogConverter().getJson(new Dog(id, "dog" + id, id % 100, id % 50, "race")));
+                if (id % 1000 == 0) pw.println(); // blank lines are skipped
+            }
+        }
+        try {
+            // parsed and converted in parallel, while the repo is locked for writers until it's done
+            Cache<Dog> c = new Cache<>(new DemoRepo(db.toString()), Cache.Mode.EAGER, new DogConverter());
+            if (c.size() != 20000) return false;
+            for (int id = 0; id < 20000; id += 997) {
+                if (!new Dog(id, "dog" + id, id % 100, id % 50, "race").equals(c.get(id))) return false;
+            }
+            return c.add(new Dog(20000, "new", 1, 2, "race")) && new DemoRepo(db.toString()).getAll().size() == 20001;
+        } finally {
+            Files.delete(db);
+        }
+    }
+
+    private static boolean snapshotTest(boolean log) throws RepoAccessException, IOException {
+        Path db = Files.createTempFile("db-snapshot", "");
+        Path snapshot = Files.createTempFile("db-snapshot", ".snap");
+        try (PrintWriter pw = new PrintWriter(db.toFile())) {
+            for (int id = 0; id < 100; id++) {
+                pw.println(new DogConverter().getJson(new Dog(id, "dog" + id, id % 10, id % 5, "race")));
+            }
+        }
+        try {
+            RepositoryProvider provider = log ? new LogRepo(db.toString()) : new DemoRepo(db.toString());
+            EntityRepository<Dog> repo = new JsonRepository<>(provider, new DogConverter());
+            Cache<Dog> c = new Cache<>(repo, Cache.Mode.EAGER);
+            if (!c.add(new Dog(100, "new", 1, 2, "race"))) return false;
+            c.snapshot(snapshot.toString(), new DogBinaryConverter());
+            // written to repo after the snapshot was taken, restored by catching up
+            repo.add(new Dog(101, "later", 1, 2, "race"));
+            if (log) repo.remove(new Dog(3, "dog3", 3, 3, "race"));
+            Cache<Dog> restored = new Cache<>(repo, snapshot.toString(), new DogBinaryConverter());
+            if (restored.size() != (log ? 101 : 102) ||
+                    !new Dog(101, "later", 1, 2, "race").equals(restored.get(101)) ||
+                    !new Dog(100, "new", 1, 2, "race").equals(restored.get(100)) || (log && restored.get(3) != null))
+                return false;
+            // DemoRepo rewrites its file on an update, so the snapshot is useless and all is loaded again
+            repo.update(new Dog(5, "updated", 5, 5, "race"));
+            restored = new Cache<>(repo, snapshot.toString(), new DogBinaryConverter());
+            return restored.size() == (log ? 101 : 102) && "updated".equals(restored.get(5).getName());
+        } finally {
+            Files.delete(db);
+            Files.delete(snapshot);
+        }
+    }
+
+    private static boolean statsTest() throws RepoAccessException, JMException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        Subscriber<Dog> a = new User<>("User A", c);
+        if (!a.add(new Dog(0, "Flaky", 100, 2, "Labrador")) || a.get(0) == null || a.get(1) != null) return false;
+        CacheStats stats = c.stats();
+        if (stats.hits != 1 || stats.misses != 1 || stats.loads != 1 || stats.loadsNotFound != 1 ||
+                stats.loadFailures != 0 || stats.entryCount != 1 || stats.hitRate() != 0.5 ||
+                stats.notification.count != 1 || stats.repoLatency.get(CacheStats.RepoCall.ADD).count != 1 ||
+                stats.repoLatency.get(CacheStats.RepoCall.GET).count != 1 || stats.lockAcquisitions < 2)
+            return false;
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) histogram.record(i * 1000L);
+        LatencyHistogram.Summary summary = histogram.summary();
+        // within the precision of a bucket
+        if (summary.count != 1000 || summary.max != 1_000_000 || Math.abs(summary.p50 - 500_000) > 500_000 / 16 ||
+                Math.abs(summary.p99 - 990_000) > 990_000 / 16)
+            return false;
+        c.registerMBean("stats-test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("Cache:type=CacheStats,name=" + ObjectName.quote("stats-test"));
+            if (!Long.valueOf(1).equals(server.getAttribute(name, "HitCount"))) return false;
+        } finally {
+            c.close();
+        }
+        return !ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("Cache:*"), null).iterator()
+                .hasNext();
+    }
+
+    private static boolean indexTest(Cache.Mode mode) throws RepoAccessException, IOException {
+        String[] races = {"Labrador", "Pincher", "Amstaf"};
+        Path db = Files.createTempFile("db-index", "");
+        try (PrintWriter pw = new PrintWriter(db.toFile())) {
+            for (int id = 0; id < 60; id++) {
+                pw.println(new DogConverter().getJson(new Dog(id, "dog" + id, id, id, races[id % 3])));
+            }
+        }
+        try {
+            Cache<Dog> c = new Cache<>(new DemoRepo(db.toString()), mode, new DogConverter(), 10);
+            c.addHashIndex("race", Dog::getRace);
+            c.addSortedIndex("weight", Dog::getWeight);
+            // in BOUNDED mode the entities are loaded lazily and most of them evicted, only the cached are found
+            for (int id = 0; id < 60; id++) c.get(id);
+            int cached = mode == Cache.Mode.EAGER ? 20 : c.query(dog -> dog.getRace().equals("Labrador")).size();
+            if (c.query("race", "Labrador").size() != cached) return false;
+            for (Dog dog : c.query("race", "Labrador")) if (!dog.getRace().equals("Labrador")) return false;
+            if (!c.add(new Dog(60, "new", 1, 55, "Labrador")) || !c.update(new Dog(0, "dog0", 1, 0, "Pincher")))
+                return false;
+            if (c.query("race", "Labrador").stream().anyMatch(dog -> dog.getId() == 0) ||
+                    c.query("race", "Labrador").stream().noneMatch(dog -> dog.getId() == 60))
+                return false;
+            if (mode == Cache.Mode.BOUNDED) {
+                // the ids evicted are unindexed right away, not once a query finds them missing
+                IndexedStore<Dog> store = new IndexedStore<>(new SegmentedLruStore<>(10), false);
+                SecondaryIndex<Dog> index = new SecondaryIndex<>(Dog::getRace, false);
+                store.addIndex("race", index);
+                for (int id = 0; id < 60; id++) store.put(id, new CacheEntry<>(new Dog(id, "dog", id, id, "Labrador")));
+                return index.get("Labrador").size() == 10;
+            }
+            List<Integer> weights = new ArrayList<>();
+            for (Dog dog : c.query("weight", 50, 56)) weights.add(dog.getWeight());
+            if (!weights.equals(Arrays.asList(50, 51, 52, 53, 54, 55, 55, 56))) return false; // ordered by weight
+            return c.remove(new Dog(60, "new", 1, 55, "Labrador")) && c.query("weight", 55, 55).size() == 1 &&
+                    c.query(dog -> dog.getWeight() > 50).size() == 9;
+        } finally {
+            Files.delete(db);
+        }
+    }
+
+    private static boolean rangeTest(Cache.Mode mode) throws RepoAccessException, IOException {
+        Path db = Files.createTempFile("db-range", "");
+        try (PrintWriter pw = new PrintWriter(db.toFile())) {
+            for (int id = 198; id >= 0; id -= 2) { // only even ids, in reverse order
+                pw.println(new DogConverter().getJson(new Dog(id, "dog" + id, id, id, "race")));
+            }
+        }
+        try {
+            DemoRepo repo = new DemoRepo(db.toString());
+            if (repo.getRange(0, 4).size() != 3 || repo.getRange(5, 5).size() != 0) return false;
+            Cache<Dog> c = new Cache<>(repo, mode, new DogConverter());
+            if (!c.update(new Dog(12, "cached", 12, 12, "race")) || !c.add(new Dog(201, "new", 1, 1, "race")))
+                return false;
+            List<Integer> ids = new ArrayList<>();
+            for (Dog dog : c.getRange(10, 20)) ids.add(dog.getId());
+            if (!ids.equals(Arrays.asList(10, 12, 14, 16, 18, 20)) || !"cached".equals(c.get(12).getName()))
+                return false;
+            if (mode != Cache.Mode.EAGER && c.getIfPresent(14) == null) return false; // cached by the range read
+            ids.clear();
+            try (Stream<Dog> range = c.streamRange(190, 1000)) {
+                for (Iterator<Dog> dogs = range.iterator(); dogs.hasNext(); ) {
+                    Dog dog = dogs.next();
+                    ids.add(dog.getId());
+                    // the thread reading the stream writes meanwhile, moving the lines not read yet
+                    if (dog.getId() == 190 && !c.remove(194)) return false;
+                }
+            }
+            return ids.equals(Arrays.asList(190, 192, 196, 198, 201)) && c.getRange(20, 10).isEmpty();
+        } finally {
+            Files.delete(db);
+        }
+    }
+
+    private static boolean versionTest(Cache.Mode mode) throws RepoAccessException, InterruptedException, IOException {
+        Path db = Files.createTempFile("db-version", "");
+        try (PrintWriter pw = new PrintWriter(db.toFile())) {
+            pw.println(new DogConverter().getJson(new Dog(0, "counter", 0, 0, "race")));
+        }
+        try {
+            Cache<Dog> c = new Cache<>(new DemoRepo(db.toString()), mode, new DogConverter());
+            Versioned<Dog> read = c.getVersioned(0);
+            if (read == null || c.getVersioned(1) != null) return false;
+            if (!c.compareAndUpdate(new Dog(0, "counter", 0, 1, "race"), read.version)) return false;
+            // the version read is stale now
+            if (c.compareAndUpdate(new Dog(0, "lost", 0, 100, "race"), read.version)) return false;
+            // concurrent read-modify-writes, each retried until no other write came between its read and write
+            int threads = 4, increments = 25;
+            Thread[] writers = new Thread[threads];
+            AtomicBoolean failed = new AtomicBoolean();
+            for (int t = 0; t < threads; t++) {
+                writers[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < increments; i++) {
+                            Versioned<Dog> dog;
+                            do {
+                                dog = c.getVersioned(0);
+                            } while (!c.compareAndUpdate(new Dog(0, "counter", 0, dog.entity.getWeight() + 1, "race"),
+                                    dog.version));
+                        }
+                    } catch (RepoAccessException e) {
+                        failed.set(true);
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) writer.join();
+            int expected = 1 + threads * increments;
+            if (failed.get() || c.get(0).getWeight() != expected ||
+                    new Cache<>(new DemoRepo(db.toString()), mode, new DogConverter()).get(0).getWeight() != expected)
+                return false;
+            // reloaded from repo once expired, unchanged, so the version read before is still current
+            Versioned<Dog> before = c.getVersioned(0);
+            c.expireAfterWrite(50, TimeUnit.MILLISECONDS);
+            Thread.sleep(100);
+            return c.getVersioned(0).version == before.version &&
+                    c.compareAndUpdate(new Dog(0, "counter", 0, 0, "race"), before.version);
+        } finally {
+            Files.delete(db);
+        }
+    }
+
+    private static boolean nearCacheTest() throws RepoAccessException {
+        resetRepo();
+        Cache<Dog> c = new Cache<>(new DemoRepo(basicDB), Cache.Mode.LAZY, new DogConverter());
+        NearCache<Dog> a = new NearCache<>(c, 10);
+        Subscriber<Dog> b = new User<>("User B", c);
+        if (!b.add(new Dog(0, "Flaky", 100, 2, "Labrador")) || a.get(0) == null || a.get(0) == null) return false;
+        CacheStats near = a.stats();
+        if (near.hits != 1 || near.misses != 1 || near.entryCount != 1 || c.stats().hits != 1) return false;
+        // invalidated by the notification of the update, read again from L2
+        if (!b.update(new Dog(0, "Updated", 100, 2, "Labrador")) || !"Updated".equals(a.get(0).getName()))
+            return false;
+        if (!b.remove(0) || a.get(0) != null) return false;
+        if (a.stats().misses != 3 || a.stats().entryCount != 0) return false;
+        // L1 stays within its bound, keeping the entity read between the fills
+        for (int id = 100; id < 130; id++) {
+            if (!b.add(new Dog(id, "Dog" + id, 10, 20, "Labrador")) || a.get(id) == null || a.get(100) == null)
+                return false;
+        }
+        a.close();
+        return a.stats().entryCount <= 10 && a.stats().hits > 30;
+    }
+
+    private static boolean changeCaptureTest(Cache.Mode mode)
+            throws RepoAccessException, InterruptedException, IOException {
+        DogConverter converter = new DogConverter();
+        Path db = Files.createTempFile("db-capture", "");
+        try (PrintWriter pw = new PrintWriter(db.toFile())) {
+            for (int id = 0; id < 5; id++) pw.println(converter.getJson(new Dog(id, "dog" + id, id, id, "race")));
+        }
+        Cache<Dog> c = new Cache<>(new DemoRepo(db.toString()), mode, converter);
+        try {
+            c.watchRepo(db.toString());
+            NearCache<Dog> a = new NearCache<>(c, 10);
+            if (a.get(0) == null || !c.update(new Dog(1, "own", 1, 1, "race"))) return false;
+            // another process appends an update and an add
+            Files.writeString(db, converter.getJson(new Dog(0, "external", 0, 0, "race")) + "\n" +
+                    converter.getJson(new Dog(7, "external", 7, 7, "race")) + "\n", StandardOpenOption.APPEND);
+            for (int i = 0; i < 250 && !"external".equals(a.get(0).getName()); i++) Thread.sleep(20);
+            if (!"external".equals(a.get(0).getName()) || c.get(7) == null || !"own".equals(c.get(1).getName()))
+                return false;
+            // and updates an entity in place, keeping the size of the file
+            Dog same = new Dog(2, "same", 2, 2, "race");
+            try (FileChannel file = FileChannel.open(db, StandardOpenOption.WRITE)) {
+                file.write(ByteBuffer.wrap("same".getBytes(StandardCharsets.UTF_8)),
+                        Files.readString(db).indexOf("\"dog2\"") + 1);
+            }
+            for (int i = 0; i < 250 && !same.equals(a.get(2)); i++) Thread.sleep(20);
+            if (!same.equals(a.get(2)) || !"own".equals(c.get(1).getName())) return false;
+            if (mode != Cache.Mode.EAGER) return true;
+            // and rewrites the file without the entities from 3 on
+            try (PrintWriter pw = new PrintWriter(db.toFile())) {
+                for (int id = 0; id < 3; id++) pw.println(converter.getJson(new Dog(id, "rewritten", id, id, "race")));
+            }
+            for (int i = 0; i < 250 && c.size() != 3; i++) Thread.sleep(20);
+            return c.size() == 3 && c.get(7) == null && "rewritten".equals(a.get(0).getName());
+        } finally {
+            c.close();
+            Files.delete(db);
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.out.println(removeTest(Cache.Mode.LAZY) && removeTest(Cache.Mode.EAGER) ? "Removing PASSED" : "Removing FAILED");
+            System.out.println(getTest(Cache.Mode.LAZY) && getTest(Cache.Mode.EAGER) ? "Getting PASSED" : "Getting FAILED");
+            System.out.println(addTest(Cache.Mode.LAZY) && addTest(Cache.Mode.EAGER) ? "Adding PASSED" : "Adding FAILED");
+            System.out.println(updateTest(Cache.Mode.LAZY) && updateTest(Cache.Mode.EAGER) ? "Updating PASSED" : "Updating FAILED");
+            System.out.println(persistentDBTest(Cache.Mode.LAZY) && persistentDBTest(Cache.Mode.EAGER) ? "Persistent PASSED" : "Persistent FAILED");
+            System.out.println(consistentTest(Cache.Mode.LAZY) && consistentTest(Cache.Mode.EAGER) ? "Consistent PASSED" : "Consistent FAILED");
+            System.out.println(threadSafeTest(Cache.Mode.LAZY) && threadSafeTest(Cache.Mode.EAGER) ? "ThreadSafe PASSED" : "ThreadSafe FAILED");
+            System.out.println(updateLazyTest() ? "UpdateLazy PASSED" : "UpdateLazy FAILED");
+            System.out.println(stripedLockTest(Cache.Mode.LAZY) && stripedLockTest(Cache.Mode.EAGER) ? "StripedLock PASSED" : "StripedLock FAILED");
+            System.out.println(singleFlightTest() ? "SingleFlight PASSED" : "SingleFlight FAILED");
+            System.out.println(boundedTest() ? "Bounded PASSED" : "Bounded FAILED");
+            System.out.println(membershipFilterTest() ? "MembershipFilter PASSED" : "MembershipFilter FAILED");
+            System.out.println(expiryTest(Cache.Mode.LAZY) && expiryTest(Cache.Mode.EAGER) ? "Expiry PASSED" : "Expiry FAILED");
+            System.out.println(repoFailureTest() ? "RepoFailure PASSED" : "RepoFailure FAILED");
+            System.out.println(repoBugTest() ? "RepoBug PASSED" : "RepoBug FAILED");
+            System.out.println(logRepoTest() ? "LogRepo PASSED" : "LogRepo FAILED");
+            System.out.println(mappedRepoTest() ? "MappedRepo PASSED" : "MappedRepo FAILED");
+            System.out.println(externalModificationTest() ? "ExternalModification PASSED" : "ExternalModification FAILED");
+            System.out.println(binaryRepoTest(Cache.Mode.LAZY) && binaryRepoTest(Cache.Mode.EAGER) ? "BinaryRepo PASSED" : "BinaryRepo FAILED");
+            System.out.println(bulkTest(Cache.Mode.LAZY) && bulkTest(Cache.Mode.EAGER) ? "Bulk PASSED" : "Bulk FAILED");
+            System.out.println(subscriberDefaultsTest() ? "SubscriberDefaults PASSED" : "SubscriberDefaults FAILED");
+            System.out.println(writeBehindTest(Cache.Mode.LAZY) && writeBehindTest(Cache.Mode.EAGER) ? "WriteBehind PASSED" : "WriteBehind FAILED");
+            System.out.println(writeBehindDroppedTest() ? "WriteBehindDropped PASSED" : "WriteBehindDropped FAILED");
+            System.out.println(asyncTest(Cache.Mode.LAZY) && asyncTest(Cache.Mode.EAGER) ? "Async PASSED" : "Async FAILED");
+            System.out.println(asyncStatsTest() ? "AsyncStats PASSED" : "AsyncStats FAILED");
+            System.out.println(asyncNotificationsTest(SubscriberDispatcher.Backpressure.BLOCK) &&
+                    asyncNotificationsTest(SubscriberDispatcher.Backpressure.DROP) &&
+                    asyncNotificationsTest(SubscriberDispatcher.Backpressure.COALESCE) ?
+                    "AsyncNotifications PASSED" : "AsyncNotifications FAILED");
+            System.out.println(interestTest() ? "Interest PASSED" : "Interest FAILED");
+            System.out.println(deltaCloseTest() ? "DeltaClose PASSED" : "DeltaClose FAILED");
+            System.out.println(offHeapTest(Cache.Mode.LAZY) && offHeapTest(Cache.Mode.EAGER) ? "OffHeap PASSED" : "OffHeap FAILED");
+            System.out.println(intStoreTest() ? "IntStore PASSED" : "IntStore FAILED");
+            System.out.println(warmUpTest() ? "WarmUp PASSED" : "WarmUp FAILED");
+            System.out.println(snapshotTest(false) && snapshotTest(true) ? "Snapshot PASSED" : "Snapshot FAILED");
+            System.out.println(statsTest() ? "Stats PASSED" : "Stats FAILED");
+            System.out.println(indexTest(Cache.Mode.EAGER) && indexTest(Cache.Mode.BOUNDED) ? "Index PASSED" : "Index FAILED");
+            System.out.println(rangeTest(Cache.Mode.LAZY) && rangeTest(Cache.Mode.EAGER) ? "Range PASSED" : "Range FAILED");
+            System.out.println(versionTest(Cache.Mode.LAZY) && versionTest(Cache.Mode.EAGER) ? "Version PASSED" : "Version FAILED");
+            System.out.println(nearCacheTest() ? "NearCache PASSED" : "NearCache FAILED");
+            System.out.println(changeCaptureTest(Cache.Mode.LAZY) && changeCaptureTest(Cache.Mode.EAGER) ? "ChangeCapture PASSED" : "ChangeCapture FAILED");
+        } catch (RepoAccessException | InterruptedException | IOException | JSONException | JMException e) {
+            System.err.println("Tests corrupted");
+        }
+    }
+
+
+}
@@ -0,0 +1,192 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Entity repository recording the latency of every call to the repository it wraps, by operation
+ *
+ * @param <T> An object that implements Entity
+ */
+class TimedRepository<T extends Entity> implements EntityRepository<T> {
+    private final EntityRepository<T> repo;
+    private final StatsCounter stats;
+
+    TimedRepository(EntityRepository<T> repo, StatsCounter stats) {
+        this.repo = repo;
+        this.stats = stats;
+    }
+
+    @Override
+    public T get(int id) {
+        long start = System.nanoTime();
+        try {
+            return repo.get(id);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.GET, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public T find(int id) throws RepoAccessException {
+        long start = System.nanoTime();
+        try {
+            return repo.find(id);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.GET, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ArrayList<T> getAll() {
+        long start = System.nanoTime();
+        try {
+            return repo.getAll();
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.GET_ALL, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * timed until the stream is closed
+     */
+    @Override
+    public Stream<T> stream() {
+        long start = System.nanoTime();
+        Stream<T> entities = repo.stream();
+        if (entities == null) {
+            stats.recordRepoCall(CacheStats.RepoCall.STREAM, System.nanoTime() - start);
+            return null;
+        }
+        return entities.onClose(() -> stats.recordRepoCall(CacheStats.RepoCall.STREAM, System.nanoTime() - start));
+    }
+
+    @Override
+    public ArrayList<T> getRange(int fromId, int toId) {
+        long start = System.nanoTime();
+        try {
+            return repo.getRange(fromId, toId);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.GET_RANGE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * timed until the stream is closed
+     */
+    @Override
+    public Stream<T> streamRange(int fromId, int toId) {
+        long start = System.nanoTime();
+        Stream<T> entities = repo.streamRange(fromId, toId);
+        if (entities == null) {
+            stats.recordRepoCall(CacheStats.RepoCall.GET_RANGE, System.nanoTime() - start);
+            return null;
+        }
+        return entities.onClose(() -> stats.recordRepoCall(CacheStats.RepoCall.GET_RANGE, System.nanoTime() - start));
+    }
+
+    @Override
+    public String marker() {
+        long start = System.nanoTime();
+        try {
+            return repo.marker();
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.MARKER, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<Integer, T> changesSince(String marker) {
+        long start = System.nanoTime();
+        try {
+            return repo.changesSince(marker);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.CHANGES_SINCE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<Integer, T> externalChanges() {
+        long start = System.nanoTime();
+        try {
+            return repo.externalChanges();
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.EXTERNAL_CHANGES, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate add(T entity) {
+        long start = System.nanoTime();
+        try {
+            return repo.add(entity);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.ADD, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate update(T entity) {
+        long start = System.nanoTime();
+        try {
+            return repo.update(entity);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.UPDATE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public RepositoryProvider.ReturnSate remove(T entity) {
+        long start = System.nanoTime();
+        try {
+            return repo.remove(entity);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.REMOVE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ArrayList<T> getAll(Collection<Integer> ids) {
+        long start = System.nanoTime();
+        try {
+            return repo.getAll(ids);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.GET_ALL, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ArrayList<RepositoryProvider.ReturnSate> addAll(List<T> entities) {
+        long start = System.nanoTime();
+        try {
+            return repo.addAll(entities);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.ADD_ALL, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ArrayList<RepositoryProvider.ReturnSate> updateAll(List<T> entities) {
+        long start = System.nanoTime();
+        try {
+            return repo.updateAll(entities);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.UPDATE_ALL, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ArrayList<RepositoryProvider.ReturnSate> removeAll(List<T> entities) {
+        long start = System.nanoTime();
+        try {
+            return repo.removeAll(entities);
+        } finally {
+            stats.recordRepoCall(CacheStats.RepoCall.REMOVE_ALL, System.nanoTime() - start);
+        }
+    }
+}
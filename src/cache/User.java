@@ -0,0 +1,111 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Subscriber that demonstrate the library functionality
+ */
+public class User<T extends Entity> implements Subscriber<T> {
+    private String name;
+    private Cache<T> c;
+
+    User(String name, Cache<T> c) {
+        this.name = name;
+        this.c = c;
+        c.register(this);
+    }
+
+    @Override
+    public T get(Integer eId) {
+        return c.get(eId);
+    }
+
+    @Override
+    public T get(int eId) {
+        return c.get(eId);
+    }
+
+    @Override
+    public boolean add(T entity) throws RepoAccessException {
+        return c.add(entity);
+    }
+
+    @Override
+    public boolean update(T entity) throws RepoAccessException {
+        return c.update(entity);
+    }
+
+    @Override
+    public boolean remove(T entity) throws RepoAccessException {
+        return c.remove(entity);
+    }
+
+    @Override
+    public boolean remove(int eId) throws RepoAccessException {
+        return c.remove(eId);
+    }
+
+    @Override
+    public Versioned<T> getVersioned(int eId) {
+        return c.getVersioned(eId);
+    }
+
+    @Override
+    public boolean compareAndUpdate(T entity, long expectedVersion) throws RepoAccessException {
+        return c.compareAndUpdate(entity, expectedVersion);
+    }
+
+    @Override
+    public ArrayList<T> getAll(Collection<Integer> eIds) {
+        return c.getAll(eIds);
+    }
+
+    @Override
+    public boolean[] addAll(List<T> entities) throws RepoAccessException {
+        return c.addAll(entities);
+    }
+
+    @Override
+    public boolean[] updateAll(List<T> entities) throws RepoAccessException {
+        return c.updateAll(entities);
+    }
+
+    @Override
+    public boolean[] removeAll(List<T> entities) throws RepoAccessException {
+        return c.removeAll(entities);
+    }
+
+    @Override
+    public void inform(Cache.Operation operation, T entity) {
+        // Basically for testing purpose
+        System.out.println("(" + name + "):" + "Entity " + entity.getId() + " " + describe(operation));
+    }
+
+    @Override
+    public void informAll(Cache.Operation operation, List<T> entities) {
+        // Basically for testing purpose
+        StringBuilder ids = new StringBuilder();
+        for (T entity : entities) {
+            ids.append(ids.length() == 0 ? "" : ", ").append(entity.getId());
+        }
+        System.out.println("(" + name + "):" + "Entities [" + ids + "] " + describe(operation));
+    }
+
+    private static String describe(Cache.Operation operation) {
+        String opS = null;
+        switch (operation) {
+            case ADD:
+                opS = "ADDED";
+                break;
+            case UPDATE:
+                opS = "UPDATED";
+                break;
+            case REMOVE:
+                opS = "REMOVED";
+                break;
+        }
+        return opS;
+    }
+}
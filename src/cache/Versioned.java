@@ -0,0 +1,17 @@
+package cache;
+
+/**
+ * An entity read from a cache along with the version of its cached entry, to update the entity by
+ * Cache.compareAndUpdate only if it wasn't written meanwhile
+ *
+ * @param <T> An object that implements Entity
+ */
+final class Versioned<T extends Entity> {
+    final T entity;
+    final long version;
+
+    Versioned(T entity, long version) {
+        this.entity = entity;
+        this.version = version;
+    }
+}
@@ -0,0 +1,61 @@
+package cache;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor of blocking tasks: a virtual thread per task where the runtime has virtual threads (Java 21 and up),
+ * otherwise a bounded pool of daemon threads that grows with the tasks in flight and shrinks once they are idle.
+ * A task submitted while all the threads of the pool are busy runs on the submitting thread, which slows down the
+ * submitter instead of queueing without bound, and can't deadlock a task waiting for a task it submitted
+ */
+final class VirtualThreads {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    // blocking tasks mostly wait for I/O, so the pool has more threads than processors
+    private static final int MAX_THREADS = Math.max(64, 16 * Runtime.getRuntime().availableProcessors());
+    private static volatile ExecutorService executor;
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return the executor shared by the asynchronous cache and repositories
+     */
+    static ExecutorService executor() {
+        ExecutorService executor = VirtualThreads.executor;
+        if (executor == null) {
+            synchronized (VirtualThreads.class) {
+                executor = VirtualThreads.executor;
+                if (executor == null) VirtualThreads.executor = executor = create();
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * @return true if the tasks run on virtual threads
+     */
+    static boolean isVirtual() {
+        return !(executor() instanceof ThreadPoolExecutor);
+    }
+
+    private static ExecutorService create() {
+        try {
+            // looked up reflectively so the code still compiles and runs on runtimes without virtual threads
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return new ThreadPoolExecutor(0, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), r -> {
+                Thread thread = new Thread(r, "cache-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Queue of writes a cache already applied but not yet wrote to its repo.
+ * Writes to the same entity are merged into one, and a background writer flushes them to the repo in batches.
+ * A write that failed is retried by the next flush, up to a maximum number of attempts. A write dropped after
+ * them is handed to a listener, so the cache can stop serving it, and reported by the next call to flush
+ *
+ * @param <T> An object that implements Entity
+ */
+class WriteBehindQueue<T extends Entity> {
+    /**
+     * A write waiting to be flushed
+     */
+    static final class Write<T> {
+        final Cache.Operation operation;
+        final T entity;
+        final int attempts; // failed attempts to write it so far
+
+        Write(Cache.Operation operation, T entity, int attempts) {
+            this.operation = operation;
+            this.entity = entity;
+            this.attempts = attempts;
+        }
+    }
+
+    private final EntityRepository<T> repo;
+    private final int maxRetries;
+    private final Consumer<Write<T>> onDropped;
+    // ids of the writes dropped since the last call to flush
+    private final Set<Integer> dropped = ConcurrentHashMap.newKeySet();
+    // writes not flushed yet, relative to the repo once the writes being flushed are written
+    private final ConcurrentHashMap<Integer, Write<T>> pending = new ConcurrentHashMap<>();
+    // writes taken by the flush in progress
+    private final ConcurrentHashMap<Integer, Write<T>> flushing = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param repo          the repo to write to
+     * @param flushInterval maximum time a write waits before it's flushed to repo
+     * @param unit          unit of flushInterval
+     * @param maxRetries    number of times a failed write is retried before it's dropped
+     * @param onDropped     called with every write dropped, on the background writer thread
+     */
+    WriteBehindQueue(EntityRepository<T> repo, long flushInterval, TimeUnit unit, int maxRetries,
+                     Consumer<Write<T>> onDropped) {
+        this.repo = repo;
+        this.maxRetries = maxRetries;
+        this.onDropped = onDropped;
+        writer.scheduleWithFixedDelay(this::flushPending, flushInterval, flushInterval, unit);
+    }
+
+    /**
+     * queue a write, merging it with the write pending for the same entity.
+     * must be called holding the entity's lock in cache
+     *
+     * @param operation the operation applied in cache
+     * @param entity    the entity modified
+     */
+    void enqueue(Cache.Operation operation, T entity) {
+        pending.compute(entity.getId(), (id, older) -> merge(older, new Write<>(operation, entity, 0)));
+    }
+
+    /**
+     * @param eId the id of an entity
+     * @return the latest write of the entity that is not in repo yet, null if there's none
+     */
+    Write<T> lookup(int eId) {
+        // pending is checked first: a write leaves it only after it's put in flushing
+        Write<T> write = pending.get(eId);
+        return write != null ? write : flushing.get(eId);
+    }
+
+    /**
+     * @param fromId lowest id, inclusive
+     * @param toId   highest id, inclusive
+     * @return the latest write not in repo yet of every entity in the range
+     */
+    Map<Integer, Write<T>> writesBetween(int fromId, int toId) {
+        Map<Integer, Write<T>> writes = new HashMap<>();
+        // pending first, like lookup
+        for (Write<T> write : pending.values()) {
+            int id = write.entity.getId();
+            if (id >= fromId && id <= toId) writes.put(id, write);
+        }
+        for (Write<T> write : flushing.values()) {
+            int id = write.entity.getId();
+            if (id >= fromId && id <= toId) writes.putIfAbsent(id, write);
+        }
+        return writes;
+    }
+
+    /**
+     * flush all the writes queued so far and wait for them to be written
+     *
+     * @throws RepoAccessException if some writes failed and are still waiting for a retry, or some were dropped
+     *                             since the previous flush
+     */
+    void flush() throws RepoAccessException {
+        boolean written;
+        try {
+            written = writer.submit(this::flushPending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepoAccessException();
+        } catch (ExecutionException e) {
+            throw new RepoAccessException();
+        }
+        List<Integer> lost = new ArrayList<>();
+        for (Integer id : dropped) {
+            if (dropped.remove(id)) lost.add(id);
+        }
+        if (!lost.isEmpty())
+            throw new RepoAccessException("Write behind of entities " + lost + " dropped after " + (maxRetries + 1) +
+                    " attempts");
+        if (!written) throw new RepoAccessException();
+    }
+
+    /**
+     * flush all the writes queued and stop the background writer
+     *
+     * @throws RepoAccessException if some writes failed to be written
+     */
+    void close() throws RepoAccessException {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * write the pending writes to repo, a batch per operation. runs on the writer thread only
+     *
+     * @return true if all the writes were written, false if some are queued for a retry
+     */
+    private boolean flushPending() {
+        for (Integer id : pending.keySet()) {
+            pending.computeIfPresent(id, (k, write) -> {
+                flushing.put(k, write);
+                return null;
+            });
+        }
+        if (flushing.isEmpty()) return true;
+        boolean written = true;
+        for (Cache.Operation operation : Cache.Operation.values()) {
+            List<Write<T>> batch = new ArrayList<>();
+            List<T> entities = new ArrayList<>();
+            for (Write<T> write : flushing.values()) {
+                if (write.operation != operation) continue;
+                batch.add(write);
+                entities.add(write.entity);
+            }
+            if (batch.isEmpty()) continue;
+            List<RepositoryProvider.ReturnSate> returnSates;
+            try {
+                returnSates = operation == Cache.Operation.ADD ? repo.addAll(entities) :
+                        operation == Cache.Operation.UPDATE ? repo.updateAll(entities) : repo.removeAll(entities);
+            } catch (RuntimeException e) {
+                returnSates = null;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                RepositoryProvider.ReturnSate returnSate =
+                        returnSates == null ? RepositoryProvider.ReturnSate.FAILURE : returnSates.get(i);
+                written &= complete(batch.get(i), returnSate);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * finish a write that was flushed, queueing it again if it failed and should be retried
+     *
+     * @return true if the write was written, false if it failed
+     */
+    private boolean complete(Write<T> write, RepositoryProvider.ReturnSate returnSate) {
+        // the cache's entity wins over changes made to repo by someone else
+        if (returnSate == RepositoryProvider.ReturnSate.ALREADY_EXISTS)
+            returnSate = repo.update(write.entity);
+        else if (returnSate == RepositoryProvider.ReturnSate.NOT_EXISTS && write.operation == Cache.Operation.UPDATE)
+            returnSate = repo.add(write.entity);
+        int id = write.entity.getId();
+        if (returnSate == RepositoryProvider.ReturnSate.FAILURE) {
+            if (write.attempts < maxRetries) {
+                Write<T> retry = new Write<>(write.operation, write.entity, write.attempts + 1);
+                // the retry happened before anything queued meanwhile
+                pending.compute(id, (k, newer) -> newer == null ? retry : merge(retry, newer));
+            } else {
+                System.err.println("Write behind of entity " + id + " dropped after " + (write.attempts + 1) +
+                        " attempts");
+                dropped.add(id);
+                flushing.remove(id, write); // so the listener finds only the writes queued after it
+                onDropped.accept(write);
+            }
+        }
+        flushing.remove(id, write);
+        return returnSate != RepositoryProvider.ReturnSate.FAILURE;
+    }
+
+    /**
+     * merge two consecutive writes of the same entity into one
+     *
+     * @param older the write queued first, null if none
+     * @param newer the write queued after it
+     * @return a write with the effect of both, null if they cancel each other
+     */
+    private static <T> Write<T> merge(Write<T> older, Write<T> newer) {
+        if (older == null) return newer;
+        Cache.Operation operation = Cache.merge(older.operation, newer.operation);
+        return operation == null ? null : new Write<>(operation, newer.entity, older.attempts);
+    }
+}